@@ -0,0 +1,125 @@
+// AlgorithmComparison runs the same explicit encryption workload with each EncryptOptions algorithm and reports latency and
+// ciphertext size side by side. The DEK is cached, so the comparison measures encryption rather than KMS.
+// Algorithms, by short name:
+// - Deterministic and Random: CSFLE AEAD_AES_256_CBC_HMAC_SHA_512.
+// - Indexed and Unindexed: Queryable Encryption equality. Indexed uses the contention factor.
+// - RangePreview: Queryable Encryption range with min, max and sparsity, and the contention factor. Range payloads include
+//   edge tokens, so they are larger and slower than equality payloads.
+// All algorithms encrypt the same int32 values, because range encryption requires a numeric type. Values cycle through
+// [min, max]. Insert payloads are measured; query payloads (queryType) are not.
+// Options for MODE=algorithms:
+// - ALGORITHMS to a comma separated list. Defaults to DEFAULT_ALGORITHMS.
+// - ALGORITHM_REQUESTS to the number of encrypt calls per algorithm. Defaults to TOTAL_REQUESTS.
+// - ALGORITHM_WARMUP to the number of untimed encrypt calls per algorithm. Defaults to 100.
+// - CONTENTION_FACTOR for Indexed and RangePreview. Defaults to 0.
+// - RANGE_MIN, RANGE_MAX and RANGE_SPARSITY for RangePreview. Default to 0, 1000000 and 1.
+
+package org.mongodb.kmsbench;
+
+import com.mongodb.client.model.vault.EncryptOptions;
+import com.mongodb.client.model.vault.RangeOptions;
+import com.mongodb.client.vault.ClientEncryption;
+import com.mongodb.client.vault.ClientEncryptions;
+import org.bson.BsonBinary;
+import org.bson.BsonInt32;
+
+import java.io.PrintStream;
+
+import static org.mongodb.kmsbench.Env.getEnv;
+
+public class AlgorithmComparison {
+
+    public static final String DEFAULT_ALGORITHMS = "Deterministic,Random,Indexed,Unindexed,RangePreview";
+
+    private final ClientEncryption clientEncryption;
+    private final BsonBinary dataKey;
+    private final long contentionFactor;
+    private final int min;
+    private final int max;
+    private final long sparsity;
+
+    public AlgorithmComparison(ClientEncryption clientEncryption, BsonBinary dataKey, long contentionFactor, int min, int max, long sparsity) {
+        if (min > max) {
+            throw new IllegalArgumentException("Error: expected min <= max, got: " + min + " > " + max);
+        }
+        this.clientEncryption = clientEncryption;
+        this.dataKey = dataKey;
+        this.contentionFactor = contentionFactor;
+        this.min = min;
+        this.max = max;
+        this.sparsity = sparsity;
+    }
+
+    // runMode runs MODE=algorithms.
+    static void runMode(BenchmarkContext context) {
+        try (var encryptor = ClientEncryptions.create(context.ceSettings)) {
+            new AlgorithmComparison(encryptor, context.dataKey,
+                    Long.parseLong(getEnv("CONTENTION_FACTOR", "0")),
+                    Integer.parseInt(getEnv("RANGE_MIN", "0")),
+                    Integer.parseInt(getEnv("RANGE_MAX", "1000000")),
+                    Long.parseLong(getEnv("RANGE_SPARSITY", "1")))
+                    .run(getEnv("ALGORITHMS", DEFAULT_ALGORITHMS),
+                            Integer.parseInt(getEnv("ALGORITHM_WARMUP", "100")),
+                            Integer.parseInt(getEnv("ALGORITHM_REQUESTS", getEnv("TOTAL_REQUESTS", "1000"))),
+                            System.out);
+        }
+    }
+
+    // createEncryptOptions returns the options for an algorithm short name.
+    public EncryptOptions createEncryptOptions(String algorithm) {
+        switch (algorithm) {
+            case "Deterministic":
+                return new EncryptOptions("AEAD_AES_256_CBC_HMAC_SHA_512-Deterministic").keyId(dataKey);
+            case "Random":
+                return new EncryptOptions("AEAD_AES_256_CBC_HMAC_SHA_512-Random").keyId(dataKey);
+            case "Indexed":
+                return new EncryptOptions("Indexed").keyId(dataKey).contentionFactor(contentionFactor);
+            case "Unindexed":
+                return new EncryptOptions("Unindexed").keyId(dataKey);
+            case "RangePreview":
+                return new EncryptOptions("RangePreview").keyId(dataKey).contentionFactor(contentionFactor)
+                        .rangeOptions(new RangeOptions().min(new BsonInt32(min)).max(new BsonInt32(max)).sparsity(sparsity));
+            default:
+                throw new IllegalArgumentException("Error: unrecognized algorithm: " + algorithm + ". Expected one of " + DEFAULT_ALGORITHMS);
+        }
+    }
+
+    // run encrypts requests values with each algorithm in algorithms, a comma separated list like DEFAULT_ALGORITHMS, after
+    // warmupRequests untimed values.
+    public void run(String algorithms, int warmupRequests, int requests, PrintStream out) {
+        out.printf("Contention factor     : %d\n", contentionFactor);
+        out.printf("Range                 : [%d, %d], sparsity %d\n", min, max, sparsity);
+        out.printf("%-14s %10s %12s %12s %12s %12s\n", "Algorithm", "Ops", "Median us", "p99 us", "Max us", "Output B");
+        for (var algorithm : algorithms.split(",")) {
+            algorithm = algorithm.trim();
+            var options = createEncryptOptions(algorithm);
+            var recorder = new LatencyRecorder();
+            var outputBytes = 0L;
+            try {
+                for (var i = 0; i < warmupRequests; i++) {
+                    clientEncryption.encrypt(value(i), options);
+                }
+                for (var i = 0; i < requests; i++) {
+                    var value = value(i);
+                    var startTimeNs = System.nanoTime();
+                    var encrypted = clientEncryption.encrypt(value, options);
+                    recorder.recordNs(System.nanoTime() - startTimeNs);
+                    outputBytes += encrypted.getData().length;
+                }
+            } catch (RuntimeException e) {
+                // For example, an algorithm the server version or libmongocrypt version does not support.
+                out.printf("%-14s error: %s\n", algorithm, e.getMessage());
+                continue;
+            }
+            out.printf("%-14s %10d %12d %12d %12d %12.1f\n", algorithm, recorder.getCount(),
+                    recorder.getValueAtPercentileMicros(50),
+                    recorder.getValueAtPercentileMicros(99),
+                    recorder.getMaxMicros(),
+                    outputBytes / (double) Math.max(1, recorder.getCount()));
+        }
+    }
+
+    private BsonInt32 value(int i) {
+        return new BsonInt32((int) (min + Math.floorMod((long) i, (long) max - min + 1)));
+    }
+}
@@ -0,0 +1,235 @@
+// AutoEncryptionBenchmark measures insert and find throughput and latency through a MongoClient with automatic encryption,
+// and through a MongoClient without encryption for comparison. Both run the same workload on the same collection.
+// - The auto encrypting client uses a schema map for the collection. "ssn" is encrypted with Deterministic encryption, so
+//   finds can query it. "secret" is encrypted with Random encryption. "name" is not encrypted.
+// - Inserts insert one document each. Finds query by "ssn" for a random inserted document, and decrypt the result.
+// The workload runs once per pass. Passes:
+// - off: no encryption.
+// - mongocryptd: query analysis (command marking) by a spawned mongocryptd process. The driver spawns mongocryptd when the
+//   client is created and connects to it on localhost:27020.
+// - crypt_shared: query analysis by the crypt_shared library, loaded into the process when the client is created.
+// Startup is reported for each pass:
+// - Client create: the time to create the MongoClient. This includes loading crypt_shared or starting the mongocryptd process.
+// - mongocryptd listening: the time from before client create until mongocryptd accepts connections. If mongocryptd is
+//   already running, for example from a prior run within its idle shutdown timeout, this is not measured.
+// - First insert: the time of the first insert. This includes connection setup, the key vault find and the KMS request.
+// The per-operation overhead against the off pass is reported. The encrypted passes differ only in query analysis, so the
+// difference between them is the difference in command marking cost.
+// The DEK is cached after the first operation.
+// MODE=auto runs the off pass and one encrypted pass, with crypt_shared if CRYPT_SHARED_LIB_PATH is set and mongocryptd
+// otherwise. MODE=query-analysis runs all three passes, and requires CRYPT_SHARED_LIB_PATH and mongocryptd on the PATH.
+// Both run on KmsBenchmark.DATABASE and COLLECTION, and use TOTAL_REQUESTS, WARMUP_REQUESTS, WORKERS and WORKER_THREADS
+// per operation. See RequestLoop. Options:
+// - CRYPT_SHARED_LIB_PATH to the path of the crypt_shared library.
+
+package org.mongodb.kmsbench;
+
+import com.mongodb.AutoEncryptionSettings;
+import com.mongodb.ClientEncryptionSettings;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import org.bson.BsonArray;
+import org.bson.BsonBinary;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mongodb.kmsbench.Env.getEnv;
+import static org.mongodb.kmsbench.Env.getRequiredEnv;
+
+public class AutoEncryptionBenchmark {
+
+    public static final String OFF = "off";
+    public static final String MONGOCRYPTD = "mongocryptd";
+    public static final String CRYPT_SHARED = "crypt_shared";
+    static final int MONGOCRYPTD_PORT = 27020;
+    static final long MONGOCRYPTD_STARTUP_TIMEOUT_NS = 10_000_000_000L;
+
+    private final ClientEncryptionSettings ceSettings;
+    private final BsonBinary dataKey;
+    private final MongoNamespace namespace;
+    private final String cryptSharedLibPath;
+
+    // cryptSharedLibPath is the path to the crypt_shared library. It is required for the crypt_shared pass. mongocryptd is
+    // spawned from the PATH.
+    public AutoEncryptionBenchmark(ClientEncryptionSettings ceSettings, BsonBinary dataKey, MongoNamespace namespace, String cryptSharedLibPath) {
+        this.ceSettings = ceSettings;
+        this.dataKey = dataKey;
+        this.namespace = namespace;
+        this.cryptSharedLibPath = cryptSharedLibPath;
+    }
+
+    // runMode runs MODE=auto, or MODE=query-analysis if queryAnalysis is true.
+    static void runMode(BenchmarkContext context, boolean queryAnalysis) throws Exception {
+        var cryptSharedLibPath = queryAnalysis ? getRequiredEnv("CRYPT_SHARED_LIB_PATH") : getEnv("CRYPT_SHARED_LIB_PATH", null);
+        var passes = queryAnalysis
+                ? List.of(OFF, MONGOCRYPTD, CRYPT_SHARED)
+                : List.of(OFF, null != cryptSharedLibPath ? CRYPT_SHARED : MONGOCRYPTD);
+        new AutoEncryptionBenchmark(context.ceSettings, context.dataKey,
+                new MongoNamespace(KmsBenchmark.DATABASE, KmsBenchmark.COLLECTION), cryptSharedLibPath)
+                .run(passes,
+                        Integer.parseInt(getEnv("WARMUP_REQUESTS", "0")),
+                        Integer.parseInt(getEnv("TOTAL_REQUESTS", "1000")),
+                        Integer.parseInt(getEnv("WORKERS", "1")),
+                        getEnv("WORKER_THREADS", "platform"),
+                        System.out);
+    }
+
+    // createSchema returns the JSON schema for the collection.
+    static BsonDocument createSchema(BsonBinary dataKey) {
+        return new BsonDocument("bsonType", new BsonString("object"))
+                .append("encryptMetadata", new BsonDocument("keyId", new BsonArray(List.of(dataKey))))
+                .append("properties", new BsonDocument()
+                        .append("ssn", new BsonDocument("encrypt", new BsonDocument("bsonType", new BsonString("string"))
+                                .append("algorithm", new BsonString("AEAD_AES_256_CBC_HMAC_SHA_512-Deterministic"))))
+                        .append("secret", new BsonDocument("encrypt", new BsonDocument("bsonType", new BsonString("string"))
+                                .append("algorithm", new BsonString("AEAD_AES_256_CBC_HMAC_SHA_512-Random")))));
+    }
+
+    AutoEncryptionSettings createAutoEncryptionSettings(String queryAnalysis) {
+        Map<String, Object> extraOptions = new HashMap<>();
+        switch (queryAnalysis) {
+            case MONGOCRYPTD:
+                break;
+            case CRYPT_SHARED:
+                if (null == cryptSharedLibPath) {
+                    throw new IllegalArgumentException("Error: the crypt_shared pass requires a crypt_shared library path");
+                }
+                extraOptions.put("cryptSharedLibPath", cryptSharedLibPath);
+                // Fail rather than fall back to mongocryptd if crypt_shared cannot be loaded.
+                extraOptions.put("cryptSharedLibRequired", true);
+                break;
+            default:
+                throw new IllegalArgumentException("Error: unrecognized query analysis: " + queryAnalysis + ". Expected mongocryptd or crypt_shared");
+        }
+        return KmsBenchmark.autoEncryptionSettingsBuilder(ceSettings)
+                .schemaMap(Map.of(namespace.getFullName(), createSchema(dataKey)))
+                .extraOptions(extraOptions)
+                .build();
+    }
+
+    static BsonDocument createDocument(int id) {
+        return new BsonDocument("_id", new BsonInt32(id))
+                .append("ssn", new BsonString(ssn(id)))
+                .append("secret", new BsonString("secret-" + id))
+                .append("name", new BsonString("name-" + id));
+    }
+
+    static String ssn(int id) {
+        return String.format("%03d-%02d-%04d", id / 1_000_000 % 1000, id / 10_000 % 100, id % 10_000);
+    }
+
+    static class Row {
+        final String pass;
+        final String operation;
+        final LoadRunner.Result result;
+
+        Row(String pass, String operation, LoadRunner.Result result) {
+            this.pass = pass;
+            this.operation = operation;
+            this.result = result;
+        }
+    }
+
+    // run runs warmupRequests and then requests inserts and finds in each pass of passes. passes contains OFF, MONGOCRYPTD
+    // or CRYPT_SHARED.
+    public void run(List<String> passes, int warmupRequests, int requests, int workers, String workerThreads, PrintStream out) throws Exception {
+        out.printf("Namespace             : %s\n", namespace.getFullName());
+        out.printf("Passes                : %s\n", String.join(", ", passes));
+        if (null != cryptSharedLibPath) {
+            out.printf("crypt_shared          : %s\n", cryptSharedLibPath);
+        }
+        out.printf("Requests              : %d per operation after %d warm-up, %d %s worker(s)\n", requests, warmupRequests, workers, workerThreads);
+        var rows = new ArrayList<Row>();
+        for (var pass : passes) {
+            var settingsBuilder = MongoClientSettings.builder().applyConnectionString(KmsBenchmark.CONNECTION_STRING);
+            if (!OFF.equals(pass)) {
+                settingsBuilder.autoEncryptionSettings(createAutoEncryptionSettings(pass));
+            }
+            var mongocryptdRunning = MONGOCRYPTD.equals(pass) && isListening(MONGOCRYPTD_PORT);
+            var createStartTimeNs = System.nanoTime();
+            try (var client = MongoClients.create(settingsBuilder.build())) {
+                out.printf("%-22s: %.3fms (%s)\n", "Client create", (System.nanoTime() - createStartTimeNs) / 1_000_000.0, pass);
+                if (mongocryptdRunning) {
+                    out.printf("%-22s: not measured, mongocryptd was already running\n", "mongocryptd listening");
+                } else if (MONGOCRYPTD.equals(pass)) {
+                    out.printf("%-22s: %.3fms\n", "mongocryptd listening", (waitUntilListening(MONGOCRYPTD_PORT) - createStartTimeNs) / 1_000_000.0);
+                }
+                var collection = client.getDatabase(namespace.getDatabaseName()).getCollection(namespace.getCollectionName(), BsonDocument.class);
+                collection.drop();
+                var nextId = new AtomicInteger();
+                LoadRunner.Iteration insert = () -> collection.insertOne(createDocument(nextId.getAndIncrement()));
+                LoadRunner.Iteration find = () -> find(collection, nextId.get());
+                var firstInsertStartTimeNs = System.nanoTime();
+                insert.run();
+                out.printf("%-22s: %.3fms (%s)\n", "First insert", (System.nanoTime() - firstInsertStartTimeNs) / 1_000_000.0, pass);
+                if (warmupRequests > 0) {
+                    LoadRunner.run(warmupRequests, workers, workerThreads, insert);
+                    LoadRunner.run(warmupRequests, workers, workerThreads, find);
+                }
+                rows.add(new Row(pass, "insert", LoadRunner.run(requests, workers, workerThreads, insert)));
+                rows.add(new Row(pass, "find", LoadRunner.run(requests, workers, workerThreads, find)));
+            }
+        }
+        out.printf("%-12s %-8s %10s %12s %12s %12s %12s %14s\n", "Pass", "Op", "Ops", "ops/s", "Median us", "p99 us", "Max us", "Median vs off");
+        for (var row : rows) {
+            var recorder = row.result.recorder;
+            // Compare with the same operation in the off pass, if it ran.
+            var overhead = "-";
+            for (var other : rows) {
+                if (OFF.equals(other.pass) && other.operation.equals(row.operation) && !OFF.equals(row.pass)) {
+                    overhead = String.format("%+d us", recorder.getValueAtPercentileMicros(50) - other.result.recorder.getValueAtPercentileMicros(50));
+                }
+            }
+            out.printf("%-12s %-8s %10d %12.2f %12d %12d %12d %14s\n", row.pass, row.operation, recorder.getCount(),
+                    recorder.getCount() / row.result.durationSec,
+                    recorder.getValueAtPercentileMicros(50),
+                    recorder.getValueAtPercentileMicros(99),
+                    recorder.getMaxMicros(),
+                    overhead);
+        }
+    }
+
+    static boolean isListening(int port) {
+        try (var socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", port), 100);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // waitUntilListening polls port on localhost and returns the System.nanoTime at which it accepted a connection.
+    static long waitUntilListening(int port) throws InterruptedException {
+        var startTimeNs = System.nanoTime();
+        while (!isListening(port)) {
+            if (System.nanoTime() - startTimeNs > MONGOCRYPTD_STARTUP_TIMEOUT_NS) {
+                throw new IllegalStateException("Error: timed out waiting for mongocryptd to listen on port " + port);
+            }
+            Thread.sleep(1);
+        }
+        return System.nanoTime();
+    }
+
+    // find finds a random document with an id less than inserted by its ssn.
+    private static void find(MongoCollection<BsonDocument> collection, int inserted) {
+        var id = ThreadLocalRandom.current().nextInt(inserted);
+        var document = collection.find(new BsonDocument("ssn", new BsonString(ssn(id)))).first();
+        if (null == document || !document.getString("secret").getValue().equals("secret-" + id)) {
+            throw new IllegalStateException("Error: expected to find document " + id + ", got: " + document);
+        }
+    }
+}
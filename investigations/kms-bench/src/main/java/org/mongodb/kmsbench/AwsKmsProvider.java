@@ -0,0 +1,78 @@
+// AwsKmsProvider uses AWS KMS. Set the following environment variables:
+// - AWS_ACCESS_KEY_ID
+// - AWS_SECRET_ACCESS_KEY
+// - AWS_KEY_ID to the key ARN.
+// - AWS_REGION to the key region. Defaults to "us-east-1".
+// With a MockAwsKmsServer, the AWS environment variables are not required.
+
+package org.mongodb.kmsbench;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+
+import javax.net.ssl.SSLContext;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.mongodb.kmsbench.Env.getEnv;
+import static org.mongodb.kmsbench.Env.getRequiredEnv;
+
+public class AwsKmsProvider implements KmsProvider {
+
+    private final MockAwsKmsServer mockKms;
+
+    // mockKms may be null to use AWS.
+    public AwsKmsProvider(MockAwsKmsServer mockKms) {
+        this.mockKms = mockKms;
+    }
+
+    @Override
+    public String getName() {
+        return "aws";
+    }
+
+    @Override
+    public Map<String, Object> getCredentials() {
+        if (null != mockKms) {
+            // The mock KMS server does not check credentials.
+            return Map.of("accessKeyId", "mock", "secretAccessKey", "mock");
+        }
+        return Map.of("accessKeyId", getRequiredEnv("AWS_ACCESS_KEY_ID"),
+                "secretAccessKey", getRequiredEnv("AWS_SECRET_ACCESS_KEY"));
+    }
+
+    @Override
+    public BsonDocument getMasterKey() {
+        if (null != mockKms) {
+            return new BsonDocument()
+                    .append("key", new BsonString(MockAwsKmsServer.KEY_ARN))
+                    .append("region", new BsonString("us-east-1"))
+                    .append("endpoint", new BsonString(mockKms.getEndpoint()));
+        }
+        return new BsonDocument()
+                .append("key", new BsonString(getRequiredEnv("AWS_KEY_ID")))
+                .append("region", new BsonString(getEnv("AWS_REGION", "us-east-1")));
+    }
+
+    @Override
+    public SSLContext getSslContext() {
+        return null != mockKms ? mockKms.getSslContext() : null;
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        var counts = new LinkedHashMap<String, Long>();
+        if (null != mockKms) {
+            counts.put("KMS Encrypt requests", mockKms.getEncryptRequests());
+            counts.put("KMS Decrypt requests", mockKms.getDecryptRequests());
+        }
+        return counts;
+    }
+
+    @Override
+    public void close() {
+        if (null != mockKms) {
+            mockKms.close();
+        }
+    }
+}
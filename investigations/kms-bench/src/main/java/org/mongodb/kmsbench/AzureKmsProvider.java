@@ -0,0 +1,82 @@
+// AzureKmsProvider uses Azure Key Vault. Set the following environment variables:
+// - AZURE_TENANT_ID
+// - AZURE_CLIENT_ID
+// - AZURE_CLIENT_SECRET
+// - AZURE_KEY_VAULT_ENDPOINT to the key vault URL.
+// - AZURE_KEY_NAME to the key name.
+// With a MockAzureKmsServer, the Azure environment variables are not required.
+
+package org.mongodb.kmsbench;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+
+import javax.net.ssl.SSLContext;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.mongodb.kmsbench.Env.getRequiredEnv;
+
+public class AzureKmsProvider implements KmsProvider {
+
+    private final MockAzureKmsServer mockKms;
+
+    // mockKms may be null to use Azure.
+    public AzureKmsProvider(MockAzureKmsServer mockKms) {
+        this.mockKms = mockKms;
+    }
+
+    @Override
+    public String getName() {
+        return "azure";
+    }
+
+    @Override
+    public Map<String, Object> getCredentials() {
+        if (null != mockKms) {
+            // The mock KMS server does not check credentials.
+            return Map.of("tenantId", "mock",
+                    "clientId", "mock",
+                    "clientSecret", "mock",
+                    "identityPlatformEndpoint", mockKms.getEndpoint());
+        }
+        return Map.of("tenantId", getRequiredEnv("AZURE_TENANT_ID"),
+                "clientId", getRequiredEnv("AZURE_CLIENT_ID"),
+                "clientSecret", getRequiredEnv("AZURE_CLIENT_SECRET"));
+    }
+
+    @Override
+    public BsonDocument getMasterKey() {
+        if (null != mockKms) {
+            return new BsonDocument()
+                    .append("keyVaultEndpoint", new BsonString(mockKms.getEndpoint()))
+                    .append("keyName", new BsonString(MockAzureKmsServer.KEY_NAME));
+        }
+        return new BsonDocument()
+                .append("keyVaultEndpoint", new BsonString(getRequiredEnv("AZURE_KEY_VAULT_ENDPOINT")))
+                .append("keyName", new BsonString(getRequiredEnv("AZURE_KEY_NAME")));
+    }
+
+    @Override
+    public SSLContext getSslContext() {
+        return null != mockKms ? mockKms.getSslContext() : null;
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        var counts = new LinkedHashMap<String, Long>();
+        if (null != mockKms) {
+            counts.put("Token requests", mockKms.getTokenRequests());
+            counts.put("wrapKey requests", mockKms.getWrapKeyRequests());
+            counts.put("unwrapKey requests", mockKms.getUnwrapKeyRequests());
+        }
+        return counts;
+    }
+
+    @Override
+    public void close() {
+        if (null != mockKms) {
+            mockKms.close();
+        }
+    }
+}
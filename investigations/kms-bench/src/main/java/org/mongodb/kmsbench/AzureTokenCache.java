@@ -0,0 +1,116 @@
+// AzureTokenCache fetches OAuth access tokens for Azure Key Vault and shares them across ClientEncryption instances.
+// Without it, libmongocrypt in each new ClientEncryption requests a token from the identity platform before its first
+// unwrapKey request. With it, ClientEncryption gets the token from the cache through kmsProviderPropertySuppliers and sends
+// only the unwrapKey request. Use configure to set up ClientEncryptionSettings.
+// A token is reused until it expires within refreshMarginNs, and then fetched again by the next caller. Callers wait while a
+// token is fetched, so concurrent callers cause one fetch.
+
+package org.mongodb.kmsbench;
+
+import com.mongodb.ClientEncryptionSettings;
+import org.bson.BsonDocument;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+
+public class AzureTokenCache {
+
+    static final String DEFAULT_IDENTITY_PLATFORM_ENDPOINT = "login.microsoftonline.com";
+    static final String SCOPE = "https://vault.azure.net/.default";
+    static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final String tenantId;
+    private final String clientId;
+    private final String clientSecret;
+    private final String identityPlatformEndpoint;
+    private final long refreshMarginNs;
+    private final HttpClient httpClient;
+    private final LatencyRecorder fetchRecorder = new LatencyRecorder();
+    private String accessToken;
+    private long expiresAtNs;
+    private long hits;
+
+    // credentials are the "azure" KMS provider options: tenantId, clientId, clientSecret and optionally
+    // identityPlatformEndpoint. sslContext may be null to use the default.
+    public AzureTokenCache(Map<String, Object> credentials, SSLContext sslContext, long refreshMarginNs) {
+        this.tenantId = (String) credentials.get("tenantId");
+        this.clientId = (String) credentials.get("clientId");
+        this.clientSecret = (String) credentials.get("clientSecret");
+        this.identityPlatformEndpoint = (String) credentials.getOrDefault("identityPlatformEndpoint", DEFAULT_IDENTITY_PLATFORM_ENDPOINT);
+        if (null == tenantId || null == clientId || null == clientSecret) {
+            throw new IllegalArgumentException("Error: expected azure credentials with tenantId, clientId and clientSecret");
+        }
+        this.refreshMarginNs = refreshMarginNs;
+        var httpClientBuilder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(TIMEOUT);
+        if (null != sslContext) {
+            httpClientBuilder.sslContext(sslContext);
+        }
+        this.httpClient = httpClientBuilder.build();
+    }
+
+    // configure returns settings like ceSettings that get the azure access token from this cache.
+    public ClientEncryptionSettings configure(ClientEncryptionSettings ceSettings) {
+        return RefreshingCredentialSupplier.configure(ceSettings, "azure", () -> Map.of("accessToken", getAccessToken()));
+    }
+
+    // getAccessToken returns the cached token, or fetches a new one if none is cached or it expires within the refresh margin.
+    public synchronized String getAccessToken() {
+        if (null != accessToken && expiresAtNs - System.nanoTime() > refreshMarginNs) {
+            hits++;
+            return accessToken;
+        }
+        var startTimeNs = System.nanoTime();
+        try {
+            var body = "grant_type=client_credentials"
+                    + "&client_id=" + URLEncoder.encode(clientId, StandardCharsets.UTF_8)
+                    + "&client_secret=" + URLEncoder.encode(clientSecret, StandardCharsets.UTF_8)
+                    + "&scope=" + URLEncoder.encode(SCOPE, StandardCharsets.UTF_8);
+            var request = HttpRequest.newBuilder(URI.create("https://" + identityPlatformEndpoint + "/" + tenantId + "/oauth2/v2.0/token"))
+                    .timeout(TIMEOUT)
+                    .header("Content-Type", "application/x-www-form-urlencoded")
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+            var response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("Error: token request failed with status " + response.statusCode() + ": " + response.body());
+            }
+            var token = BsonDocument.parse(response.body());
+            // expires_in is a number of seconds. Some endpoints send it as a string.
+            var expiresIn = token.get("expires_in");
+            var expiresInSec = expiresIn.isString() ? Long.parseLong(expiresIn.asString().getValue()) : expiresIn.asNumber().longValue();
+            accessToken = token.getString("access_token").getValue();
+            // Measure expiry from the start of the request, so network time is not counted as token lifetime.
+            expiresAtNs = startTimeNs + expiresInSec * 1_000_000_000L;
+            return accessToken;
+        } catch (IOException e) {
+            throw new IllegalStateException("Error: token request failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Error: interrupted during token request", e);
+        } finally {
+            fetchRecorder.recordNs(System.nanoTime() - startTimeNs);
+        }
+    }
+
+    // getFetchRecorder returns the times of token fetches, including failed fetches.
+    public synchronized LatencyRecorder getFetchRecorder() {
+        var recorder = new LatencyRecorder();
+        recorder.add(fetchRecorder);
+        return recorder;
+    }
+
+    // getHits returns the number of times a cached token was returned.
+    public synchronized long getHits() {
+        return hits;
+    }
+}
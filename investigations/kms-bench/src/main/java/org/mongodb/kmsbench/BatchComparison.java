@@ -0,0 +1,132 @@
+// BatchComparison compares encrypting the fields of a document one call at a time with encrypting them through a
+// BatchEncryptor. All modes use the same ClientEncryption, so the DEK is cached in all of them.
+// - keyAltName: each field is encrypted with a new EncryptOptions that names the DEK by keyAltName, like application code
+//   that encrypts fields independently.
+// - keyId: each field is encrypted with a new EncryptOptions that names the DEK by the keyId BatchEncryptor resolved. This
+//   is the baseline for batched, so the difference between them is only the batching.
+// - batched: the document and field paths are passed to BatchEncryptor.encryptFields.
+// Documents have string fields "f0", "f1", ... The report has documents/s, values/s and latency per document, and the
+// throughput of keyId relative to keyAltName and of batched relative to keyId.
+// Options for MODE=batch:
+// - BATCH_FIELDS to the number of fields per document. Defaults to 50.
+// - BATCH_REQUESTS and BATCH_WARMUP to the number of measured and warm-up documents per mode. Default to 1000 and 100.
+
+package org.mongodb.kmsbench;
+
+import com.mongodb.client.model.vault.EncryptOptions;
+import com.mongodb.client.vault.ClientEncryption;
+import com.mongodb.client.vault.ClientEncryptions;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import static org.mongodb.kmsbench.Env.getEnv;
+
+public class BatchComparison {
+
+    static final String KEY_ALT_NAME = "kms-bench";
+
+    private final ClientEncryption clientEncryption;
+    private final String algorithm;
+    private final String keyAltName;
+    private final int fields;
+
+    // keyAltName must name an existing DEK.
+    public BatchComparison(ClientEncryption clientEncryption, String algorithm, String keyAltName, int fields) {
+        this.clientEncryption = clientEncryption;
+        this.algorithm = algorithm;
+        this.keyAltName = keyAltName;
+        this.fields = fields;
+    }
+
+    // runMode runs MODE=batch. It names the DEK KEY_ALT_NAME, so the keyAltName mode can refer to it.
+    static void runMode(BenchmarkContext context) {
+        try (var encryptor = ClientEncryptions.create(context.ceSettings)) {
+            encryptor.addKeyAltName(context.dataKey, KEY_ALT_NAME);
+            new BatchComparison(encryptor, KmsBenchmark.ENCRYPTION_ALGORITHM, KEY_ALT_NAME,
+                    Integer.parseInt(getEnv("BATCH_FIELDS", "50")))
+                    .run(Integer.parseInt(getEnv("BATCH_WARMUP", "100")),
+                            Integer.parseInt(getEnv("BATCH_REQUESTS", "1000")),
+                            System.out);
+        }
+    }
+
+    // run encrypts requests documents in each mode after warmupRequests untimed documents.
+    public void run(int warmupRequests, int requests, PrintStream out) {
+        var paths = paths(fields);
+        var batchEncryptor = new BatchEncryptor(clientEncryption, new EncryptOptions(algorithm).keyAltName(keyAltName),
+                new BsonString("warmup"));
+        var keyId = batchEncryptor.getEncryptOptions().getKeyId();
+        out.printf("Algorithm             : %s\n", algorithm);
+        out.printf("Fields per document   : %d\n", fields);
+        out.printf("%-10s %10s %12s %12s %12s %12s %12s\n", "Mode", "Docs", "docs/s", "values/s", "Median us", "p99 us", "Max us");
+        var keyAltNameDocsPerSec = measure("keyAltName", document -> {
+            var result = document.clone();
+            for (var path : paths) {
+                result.put(path, clientEncryption.encrypt(result.get(path), new EncryptOptions(algorithm).keyAltName(keyAltName)));
+            }
+            return result;
+        }, warmupRequests, requests, out);
+        var keyIdDocsPerSec = measure("keyId", document -> {
+            var result = document.clone();
+            for (var path : paths) {
+                result.put(path, clientEncryption.encrypt(result.get(path), new EncryptOptions(algorithm).keyId(keyId)));
+            }
+            return result;
+        }, warmupRequests, requests, out);
+        var batchedDocsPerSec = measure("batched", document -> batchEncryptor.encryptFields(document, paths), warmupRequests, requests, out);
+        out.printf("%-22s: %.2fx docs/s\n", "keyId vs keyAltName", keyIdDocsPerSec / keyAltNameDocsPerSec);
+        out.printf("%-22s: %.2fx docs/s\n", "Batched vs keyId", batchedDocsPerSec / keyIdDocsPerSec);
+    }
+
+    // measure prints the row for mode and returns its documents/s.
+    private double measure(String mode, UnaryOperator<BsonDocument> encryptDocument, int warmupRequests, int requests, PrintStream out) {
+        for (var i = 0; i < warmupRequests; i++) {
+            encryptDocument.apply(createDocument(i));
+        }
+        // Create the documents first so only encryption is timed.
+        var documents = new ArrayList<BsonDocument>(requests);
+        for (var i = 0; i < requests; i++) {
+            documents.add(createDocument(i));
+        }
+        var recorder = new LatencyRecorder();
+        var startTimeNs = System.nanoTime();
+        for (var document : documents) {
+            var documentStartTimeNs = System.nanoTime();
+            var encrypted = encryptDocument.apply(document);
+            recorder.recordNs(System.nanoTime() - documentStartTimeNs);
+            if (encrypted.size() != document.size()) {
+                throw new IllegalStateException("Error: expected " + document.size() + " fields, got: " + encrypted.size());
+            }
+        }
+        var durationSec = (System.nanoTime() - startTimeNs) / 1_000_000_000.0;
+        out.printf("%-10s %10d %12.2f %12.2f %12d %12d %12d\n", mode, requests,
+                requests / durationSec,
+                (double) requests * fields / durationSec,
+                recorder.getValueAtPercentileMicros(50),
+                recorder.getValueAtPercentileMicros(99),
+                recorder.getMaxMicros());
+        return requests / durationSec;
+    }
+
+    private BsonDocument createDocument(int i) {
+        var document = new BsonDocument();
+        for (var field = 0; field < fields; field++) {
+            document.append("f" + field, new BsonString("value-" + i + "-" + field));
+        }
+        return document;
+    }
+
+    // paths returns the field paths of a document created with fields fields.
+    static List<String> paths(int fields) {
+        var paths = new ArrayList<String>(fields);
+        for (var i = 0; i < fields; i++) {
+            paths.add("f" + i);
+        }
+        return paths;
+    }
+}
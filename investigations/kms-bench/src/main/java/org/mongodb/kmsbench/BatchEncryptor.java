@@ -0,0 +1,82 @@
+// BatchEncryptor encrypts many values with one ClientEncryption and one set of EncryptOptions.
+// Driver 4.10.2 and libmongocrypt encrypt one value per explicit encryption context, so a batch still calls
+// ClientEncryption.encrypt once per value. BatchEncryptor removes the per-value work around those calls:
+// - A keyAltName is resolved to a keyId once, when the BatchEncryptor is created. libmongocrypt does not look up the key by
+//   name for each value.
+// - The DEK is decrypted once, when the BatchEncryptor is created, so no value in a batch waits on the key vault or KMS.
+//   libmongocrypt caches the DEK for 60 seconds. A batch after that decrypts it again on its first value.
+// - One EncryptOptions instance is used for all values.
+// BatchEncryptor is safe to use from multiple threads if the ClientEncryption is.
+
+package org.mongodb.kmsbench;
+
+import com.mongodb.client.model.vault.EncryptOptions;
+import com.mongodb.client.vault.ClientEncryption;
+import org.bson.BsonBinary;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchEncryptor {
+
+    private final ClientEncryption clientEncryption;
+    private final EncryptOptions encryptOptions;
+
+    // warmupValue is encrypted once to load the DEK. Use a value of a type the algorithm supports.
+    public BatchEncryptor(ClientEncryption clientEncryption, EncryptOptions encryptOptions, BsonValue warmupValue) {
+        this.clientEncryption = clientEncryption;
+        this.encryptOptions = resolveKeyId(clientEncryption, encryptOptions);
+        clientEncryption.encrypt(warmupValue, this.encryptOptions);
+    }
+
+    // resolveKeyId returns a copy of options that identifies the DEK by keyId.
+    static EncryptOptions resolveKeyId(ClientEncryption clientEncryption, EncryptOptions options) {
+        if (null != options.getKeyId()) {
+            return options;
+        }
+        var key = clientEncryption.getKeyByAltName(options.getKeyAltName());
+        if (null == key) {
+            throw new IllegalArgumentException("Error: no key found with keyAltName: " + options.getKeyAltName());
+        }
+        return new EncryptOptions(options.getAlgorithm())
+                .keyId(key.getBinary("_id"))
+                .contentionFactor(options.getContentionFactor())
+                .queryType(options.getQueryType())
+                .rangeOptions(options.getRangeOptions());
+    }
+
+    // getEncryptOptions returns the options used for every value, with the DEK identified by keyId.
+    public EncryptOptions getEncryptOptions() {
+        return encryptOptions;
+    }
+
+    // encrypt returns the encrypted values in the order of values.
+    public List<BsonBinary> encrypt(List<? extends BsonValue> values) {
+        var result = new ArrayList<BsonBinary>(values.size());
+        for (var value : values) {
+            result.add(clientEncryption.encrypt(value, encryptOptions));
+        }
+        return result;
+    }
+
+    // encryptFields returns a copy of document with the value at each path encrypted. Paths are dotted field names into
+    // embedded documents, like "a.b". A path that is not in document is skipped.
+    public BsonDocument encryptFields(BsonDocument document, List<String> paths) {
+        var result = document.clone();
+        for (var path : paths) {
+            var names = path.split("\\.");
+            var parent = result;
+            for (var i = 0; i < names.length - 1 && null != parent; i++) {
+                var child = parent.get(names[i]);
+                parent = null != child && child.isDocument() ? child.asDocument() : null;
+            }
+            var name = names[names.length - 1];
+            if (null != parent && parent.containsKey(name)) {
+                parent.put(name, clientEncryption.encrypt(parent.get(name), encryptOptions));
+            }
+        }
+        return result;
+    }
+}
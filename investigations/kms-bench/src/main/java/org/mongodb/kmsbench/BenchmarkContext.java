@@ -0,0 +1,55 @@
+// BenchmarkContext is the setup shared by all modes. KmsBenchmark creates it after dropping prior data and creating a DEK,
+// and passes it to the selected KmsBenchmark.Mode. Modes read their own options from the environment.
+
+package org.mongodb.kmsbench;
+
+import com.mongodb.ClientEncryptionSettings;
+import com.mongodb.client.model.vault.DataKeyOptions;
+import com.mongodb.client.vault.ClientEncryptions;
+import org.bson.BsonBinary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BenchmarkContext {
+
+    public final KmsProvider provider;
+    // staticCeSettings has the provider's credentials in kmsProviders.
+    public final ClientEncryptionSettings staticCeSettings;
+    // ceSettings is staticCeSettings, or settings that get the credentials from tokenCache or credentialSupplier.
+    public final ClientEncryptionSettings ceSettings;
+    public final BsonBinary dataKey;
+    // phaseTimer, tokenCache and credentialSupplier are null unless enabled.
+    public final PhaseTimer phaseTimer;
+    public final AzureTokenCache tokenCache;
+    public final RefreshingCredentialSupplier credentialSupplier;
+
+    BenchmarkContext(KmsProvider provider, ClientEncryptionSettings staticCeSettings, ClientEncryptionSettings ceSettings, BsonBinary dataKey,
+                     PhaseTimer phaseTimer, AzureTokenCache tokenCache, RefreshingCredentialSupplier credentialSupplier) {
+        this.provider = provider;
+        this.staticCeSettings = staticCeSettings;
+        this.ceSettings = ceSettings;
+        this.dataKey = dataKey;
+        this.phaseTimer = phaseTimer;
+        this.tokenCache = tokenCache;
+        this.credentialSupplier = credentialSupplier;
+    }
+
+    // createDataKeys returns count DEKs: dataKey followed by count - 1 new DEKs.
+    public List<BsonBinary> createDataKeys(int count) {
+        var dataKeys = new ArrayList<BsonBinary>(count);
+        dataKeys.add(dataKey);
+        System.out.printf("Creating %d DEKs ... begin\n", count);
+        try (var encryptor = ClientEncryptions.create(ceSettings)) {
+            var dko = new DataKeyOptions();
+            if (null != provider.getMasterKey()) {
+                dko.masterKey(provider.getMasterKey());
+            }
+            while (dataKeys.size() < count) {
+                dataKeys.add(encryptor.createDataKey(provider.getName(), dko));
+            }
+        }
+        System.out.printf("Creating %d DEKs ... end\n", count);
+        return dataKeys;
+    }
+}
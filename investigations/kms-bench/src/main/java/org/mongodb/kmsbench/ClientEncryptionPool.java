@@ -0,0 +1,92 @@
+// ClientEncryptionPool keeps long-lived ClientEncryption instances and reuses them across iterations.
+// Each ClientEncryption caches decrypted DEKs (libmongocrypt caches keys for 60 seconds by default), so only the first
+// use of each instance is expected to send a KMS request. The first use of an instance is recorded as cold, later uses
+// as warm.
+
+package org.mongodb.kmsbench;
+
+import com.mongodb.ClientEncryptionSettings;
+import com.mongodb.client.model.vault.EncryptOptions;
+import com.mongodb.client.vault.ClientEncryption;
+import com.mongodb.client.vault.ClientEncryptions;
+import org.bson.BsonBinary;
+import org.bson.BsonValue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class ClientEncryptionPool implements AutoCloseable {
+
+    static class Entry {
+        final ClientEncryption clientEncryption;
+        boolean used;
+
+        Entry(ClientEncryption clientEncryption) {
+            this.clientEncryption = clientEncryption;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final BlockingQueue<Entry> available;
+    private LatencyRecorder coldRecorder = new LatencyRecorder();
+    private LatencyRecorder warmRecorder = new LatencyRecorder();
+
+    public ClientEncryptionPool(ClientEncryptionSettings settings, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Error: expected a pool size of at least one, got: " + size);
+        }
+        available = new ArrayBlockingQueue<>(size);
+        for (var i = 0; i < size; i++) {
+            var entry = new Entry(ClientEncryptions.create(settings));
+            entries.add(entry);
+            available.add(entry);
+        }
+    }
+
+    // encrypt borrows a ClientEncryption, waiting if all are in use. Waiting time is not recorded as cold or warm.
+    public BsonBinary encrypt(BsonValue value, EncryptOptions options) throws InterruptedException {
+        var entry = available.take();
+        try {
+            var startTimeNs = System.nanoTime();
+            var encrypted = entry.clientEncryption.encrypt(value, options);
+            var endTimeNs = System.nanoTime();
+            if (entry.used) {
+                warmRecorder.recordNs(endTimeNs - startTimeNs);
+            } else {
+                coldRecorder.recordNs(endTimeNs - startTimeNs);
+                entry.used = true;
+            }
+            return encrypted;
+        } finally {
+            available.add(entry);
+        }
+    }
+
+    // clear discards recorded cold and warm times, for example after warm-up. Instances used before stay warm. Do not call it
+    // while iterations are running.
+    public void clear() {
+        coldRecorder = new LatencyRecorder();
+        warmRecorder = new LatencyRecorder();
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    public LatencyRecorder getColdRecorder() {
+        return coldRecorder;
+    }
+
+    public LatencyRecorder getWarmRecorder() {
+        return warmRecorder;
+    }
+
+    @Override
+    public void close() {
+        for (var entry : entries) {
+            entry.clientEncryption.close();
+        }
+    }
+}
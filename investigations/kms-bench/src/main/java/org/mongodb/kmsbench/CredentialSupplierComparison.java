@@ -0,0 +1,230 @@
+// CredentialSupplierComparison runs the MODE=create workload with three ways of giving the KMS provider credentials to
+// ClientEncryption:
+// - static: the credentials in kmsProviders, as in the other modes.
+// - direct: a kmsProviderPropertySuppliers supplier that fetches the credentials from the source on every call.
+// - refreshing: a RefreshingCredentialSupplier over the same source.
+// Each request creates a ClientEncryption, so libmongocrypt asks for the credentials once per request and the supplier is
+// on the encrypt hot path. The source returns the provider's credentials after a delay from a LatencyModel, to stand in for
+// a credential service or instance metadata endpoint, and declares them valid for a TTL.
+// The report has the request latency of each variant, the source fetches and the fetches that blocked a request, and the
+// time spent in the supplier. With refreshing, only the first fetch blocks as long as refreshes finish within the
+// refresh-ahead window, so its latency matches static.
+// MODE=credentials uses TOTAL_REQUESTS, WARMUP_REQUESTS, WORKERS and WORKER_THREADS per variant. See RequestLoop. The
+// source and the RefreshingCredentialSupplier of CREDENTIAL_SUPPLIER=true are configured with:
+// - CREDENTIAL_LATENCY to a LatencyModel specification for the time to fetch credentials from the source, e.g.
+//   "fixed:50ms". Defaults to "none".
+// - CREDENTIAL_TTL to the time fetched credentials are valid. Defaults to 2s.
+// - CREDENTIAL_REFRESH_AHEAD to refresh the credentials in the background when they expire within this time. Must be shorter
+//   than CREDENTIAL_TTL. Defaults to 500ms.
+
+package org.mongodb.kmsbench;
+
+import com.mongodb.ClientEncryptionSettings;
+import com.mongodb.client.model.vault.EncryptOptions;
+import com.mongodb.client.vault.ClientEncryptions;
+import org.bson.BsonBinary;
+import org.bson.BsonString;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.mongodb.kmsbench.Env.getEnv;
+
+public class CredentialSupplierComparison {
+
+    private final KmsProvider provider;
+    private final ClientEncryptionSettings ceSettings;
+    private final BsonBinary dataKey;
+    private final LatencyModel sourceLatency;
+    private final long ttlNs;
+    private final long refreshAheadNs;
+
+    // ceSettings must have the provider's credentials in kmsProviders.
+    public CredentialSupplierComparison(KmsProvider provider, ClientEncryptionSettings ceSettings, BsonBinary dataKey,
+                                        LatencyModel sourceLatency, long ttlNs, long refreshAheadNs) {
+        if (refreshAheadNs >= ttlNs) {
+            throw new IllegalArgumentException("Error: expected the refresh-ahead window to be shorter than the credential TTL");
+        }
+        this.provider = provider;
+        this.ceSettings = ceSettings;
+        this.dataKey = dataKey;
+        this.sourceLatency = sourceLatency;
+        this.ttlNs = ttlNs;
+        this.refreshAheadNs = refreshAheadNs;
+    }
+
+    // createSource returns a source of provider's credentials that waits for latency and declares them valid for ttlNs.
+    public static RefreshingCredentialSupplier.Source createSource(KmsProvider provider, LatencyModel latency, long ttlNs) {
+        return () -> {
+            latency.delay();
+            return new RefreshingCredentialSupplier.Credentials(provider.getCredentials(), ttlNs);
+        };
+    }
+
+    // createSupplier returns a RefreshingCredentialSupplier over a source of provider's credentials, configured from the
+    // environment.
+    static RefreshingCredentialSupplier createSupplier(KmsProvider provider) throws IOException {
+        var ttlNs = getTtlNs();
+        return new RefreshingCredentialSupplier(createSource(provider, getSourceLatency(), ttlNs), getRefreshAheadNs(ttlNs));
+    }
+
+    // runMode runs MODE=credentials.
+    static void runMode(BenchmarkContext context) throws Exception {
+        var ttlNs = getTtlNs();
+        new CredentialSupplierComparison(context.provider, context.staticCeSettings, context.dataKey, getSourceLatency(), ttlNs,
+                getRefreshAheadNs(ttlNs))
+                .run(Integer.parseInt(getEnv("WARMUP_REQUESTS", "0")),
+                        Integer.parseInt(getEnv("TOTAL_REQUESTS", "1000")),
+                        Integer.parseInt(getEnv("WORKERS", "1")),
+                        getEnv("WORKER_THREADS", "platform"),
+                        System.out);
+    }
+
+    private static LatencyModel getSourceLatency() throws IOException {
+        return LatencyModel.parse(getEnv("CREDENTIAL_LATENCY", "none"));
+    }
+
+    private static long getTtlNs() {
+        return LatencyModel.parseDurationNs(getEnv("CREDENTIAL_TTL", "2s"));
+    }
+
+    private static long getRefreshAheadNs(long ttlNs) {
+        var refreshAheadNs = LatencyModel.parseDurationNs(getEnv("CREDENTIAL_REFRESH_AHEAD", "500ms"));
+        if (refreshAheadNs >= ttlNs) {
+            throw new IllegalArgumentException("Error: expected CREDENTIAL_REFRESH_AHEAD to be shorter than CREDENTIAL_TTL");
+        }
+        return refreshAheadNs;
+    }
+
+    // TimedSupplier records the time of each call to a supplier.
+    static class TimedSupplier implements Supplier<Map<String, Object>> {
+        private final Supplier<Map<String, Object>> supplier;
+        private volatile LatencyRecorder recorder = new LatencyRecorder();
+
+        TimedSupplier(Supplier<Map<String, Object>> supplier) {
+            this.supplier = supplier;
+        }
+
+        @Override
+        public Map<String, Object> get() {
+            var startTimeNs = System.nanoTime();
+            try {
+                return supplier.get();
+            } finally {
+                recorder.recordNs(System.nanoTime() - startTimeNs);
+            }
+        }
+
+        // reset and getRecorder are called between runs, when no calls are in progress.
+        void reset() {
+            recorder = new LatencyRecorder();
+        }
+
+        LatencyRecorder getRecorder() {
+            return recorder;
+        }
+    }
+
+    static class Row {
+        String variant;
+        LoadRunner.Result result;
+        LatencyRecorder supplierRecorder;
+        // fetches and blockingFetches are -1 when the variant has no source.
+        long fetches = -1;
+        long blockingFetches = -1;
+    }
+
+    public void run(int warmupRequests, int requests, int workers, String workerThreads, PrintStream out) throws Exception {
+        var source = createSource(provider, sourceLatency, ttlNs);
+
+        var staticRow = measure("static", ceSettings, null, warmupRequests, requests, workers, workerThreads);
+
+        var direct = new TimedSupplier(() -> {
+            try {
+                return source.fetch().values;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Error: interrupted while fetching KMS credentials", e);
+            } catch (Exception e) {
+                throw new IllegalStateException("Error: failed to fetch KMS credentials", e);
+            }
+        });
+        var directRow = measure("direct", RefreshingCredentialSupplier.configure(ceSettings, provider.getName(), direct), direct,
+                warmupRequests, requests, workers, workerThreads);
+        directRow.fetches = directRow.supplierRecorder.getCount();
+        directRow.blockingFetches = directRow.fetches;
+
+        Row refreshingRow;
+        LatencyRecorder fetchRecorder;
+        long refreshFailures;
+        try (var refreshing = new RefreshingCredentialSupplier(source, refreshAheadNs)) {
+            var timed = new TimedSupplier(refreshing);
+            var settings = RefreshingCredentialSupplier.configure(ceSettings, provider.getName(), timed);
+            if (warmupRequests > 0) {
+                run(settings, warmupRequests, workers, workerThreads);
+            }
+            timed.reset();
+            var fetchesBefore = refreshing.getFetchRecorder().getCount();
+            var blockingFetchesBefore = refreshing.getBlockingFetches();
+            refreshingRow = new Row();
+            refreshingRow.variant = "refreshing";
+            refreshingRow.result = run(settings, requests, workers, workerThreads);
+            refreshingRow.supplierRecorder = timed.getRecorder();
+            fetchRecorder = refreshing.getFetchRecorder();
+            refreshingRow.fetches = fetchRecorder.getCount() - fetchesBefore;
+            refreshingRow.blockingFetches = refreshing.getBlockingFetches() - blockingFetchesBefore;
+            refreshFailures = refreshing.getRefreshFailures();
+        }
+
+        out.printf("Requests              : %d per variant after %d warm-up, %d %s worker(s)\n", requests, warmupRequests, workers, workerThreads);
+        out.printf("Credential source     : latency %s, TTL %.3fs, refresh ahead %.3fs\n", sourceLatency,
+                ttlNs / 1_000_000_000.0, refreshAheadNs / 1_000_000_000.0);
+        out.printf("%-12s %12s %12s %12s %10s %10s %16s\n", "Credentials", "Median ms", "p99 ms", "Mean ms", "Fetches", "Blocking", "Supplier p99 ms");
+        for (var row : new Row[]{staticRow, directRow, refreshingRow}) {
+            var recorder = row.result.recorder;
+            out.printf("%-12s %12.3f %12.3f %12.3f %10s %10s %16s\n", row.variant,
+                    recorder.getValueAtPercentileMicros(50) / 1_000.0,
+                    recorder.getValueAtPercentileMicros(99) / 1_000.0,
+                    recorder.getMeanMicros() / 1_000.0,
+                    row.fetches < 0 ? "-" : String.valueOf(row.fetches),
+                    row.blockingFetches < 0 ? "-" : String.valueOf(row.blockingFetches),
+                    null == row.supplierRecorder ? "-" : String.format("%.3f", row.supplierRecorder.getValueAtPercentileMicros(99) / 1_000.0));
+        }
+        if (fetchRecorder.getCount() > 0) {
+            out.printf("%-22s: median %.3fms, max %.3fms\n", "Credential fetch time", fetchRecorder.getValueAtPercentileMicros(50) / 1_000.0,
+                    fetchRecorder.getMaxMicros() / 1_000.0);
+        }
+        out.printf("Refresh failures      : %d\n", refreshFailures);
+        out.printf("%-22s: direct %.3fms, refreshing %.3fms\n", "Median vs static",
+                (directRow.result.recorder.getValueAtPercentileMicros(50) - staticRow.result.recorder.getValueAtPercentileMicros(50)) / 1_000.0,
+                (refreshingRow.result.recorder.getValueAtPercentileMicros(50) - staticRow.result.recorder.getValueAtPercentileMicros(50)) / 1_000.0);
+    }
+
+    // measure runs the warm-up and measured requests with settings. supplier may be null if settings has no supplier.
+    private Row measure(String variant, ClientEncryptionSettings settings, TimedSupplier supplier, int warmupRequests, int requests,
+                        int workers, String workerThreads) throws Exception {
+        if (warmupRequests > 0) {
+            run(settings, warmupRequests, workers, workerThreads);
+        }
+        var row = new Row();
+        row.variant = variant;
+        if (null != supplier) {
+            supplier.reset();
+        }
+        row.result = run(settings, requests, workers, workerThreads);
+        if (null != supplier) {
+            row.supplierRecorder = supplier.getRecorder();
+        }
+        return row;
+    }
+
+    private LoadRunner.Result run(ClientEncryptionSettings settings, int requests, int workers, String workerThreads) throws Exception {
+        return LoadRunner.run(requests, workers, workerThreads, () -> {
+            try (var encryptor = ClientEncryptions.create(settings)) {
+                encryptor.encrypt(new BsonString("foo"), new EncryptOptions(KmsBenchmark.ENCRYPTION_ALGORITHM).keyId(dataKey));
+            }
+        });
+    }
+}
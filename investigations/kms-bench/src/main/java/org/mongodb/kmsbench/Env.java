@@ -0,0 +1,22 @@
+// Env reads benchmark configuration from environment variables.
+
+package org.mongodb.kmsbench;
+
+public class Env {
+
+    public static String getRequiredEnv (String name) {
+        String value = System.getenv(name);
+        if (null == value) {
+            throw new RuntimeException("Error: required environment variable not set: " + name);
+        }
+        return value;
+    }
+
+    public static String getEnv (String name, String defaultValue) {
+        String value = System.getenv(name);
+        if (null == value) {
+            return defaultValue;
+        }
+        return value;
+    }
+}
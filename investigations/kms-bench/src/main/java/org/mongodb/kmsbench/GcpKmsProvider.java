@@ -0,0 +1,52 @@
+// GcpKmsProvider uses Google Cloud KMS. Set the following environment variables:
+// - GCP_EMAIL to the service account email.
+// - GCP_PRIVATE_KEY to the base64 encoded service account private key.
+// - GCP_PROJECT_ID, GCP_LOCATION, GCP_KEY_RING and GCP_KEY_NAME to identify the key.
+// There is no mock KMS server for GCP.
+
+package org.mongodb.kmsbench;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+
+import javax.net.ssl.SSLContext;
+import java.util.Map;
+
+import static org.mongodb.kmsbench.Env.getRequiredEnv;
+
+public class GcpKmsProvider implements KmsProvider {
+
+    @Override
+    public String getName() {
+        return "gcp";
+    }
+
+    @Override
+    public Map<String, Object> getCredentials() {
+        return Map.of("email", getRequiredEnv("GCP_EMAIL"),
+                "privateKey", getRequiredEnv("GCP_PRIVATE_KEY"));
+    }
+
+    @Override
+    public BsonDocument getMasterKey() {
+        return new BsonDocument()
+                .append("projectId", new BsonString(getRequiredEnv("GCP_PROJECT_ID")))
+                .append("location", new BsonString(getRequiredEnv("GCP_LOCATION")))
+                .append("keyRing", new BsonString(getRequiredEnv("GCP_KEY_RING")))
+                .append("keyName", new BsonString(getRequiredEnv("GCP_KEY_NAME")));
+    }
+
+    @Override
+    public SSLContext getSslContext() {
+        return null;
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        return Map.of();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,127 @@
+// HistogramReport prints the distribution recorded by a LatencyRecorder.
+// - printLogHistogram prints buckets on a 1-2-5 log scale, so a single outlier does not squeeze most samples into one bucket.
+//   Lines have the same "[0.2-0.5s) : 702 (70.20%)" format as the earlier linear histogram, so they can be replayed with
+//   the "histogram:" LatencyModel.
+// - writePercentileDistribution writes the HdrHistogram percentile distribution format (.hgrm) with values in
+//   milliseconds. The output can be loaded into HdrHistogram plotting tools, such as
+//   https://hdrhistogram.github.io/HdrHistogram/plotFiles.html, to compare runs.
+
+package org.mongodb.kmsbench;
+
+import java.io.PrintStream;
+import java.math.BigDecimal;
+
+public class HistogramReport {
+
+    // PERCENTILE_TICKS_PER_HALF_DISTANCE matches the HdrHistogram default. Each halving of the distance to 100% is
+    // reported in 5 steps.
+    static final int PERCENTILE_TICKS_PER_HALF_DISTANCE = 5;
+    static final double MICROS_PER_MILLI = 1_000.0;
+
+    public static void printLogHistogram(LatencyRecorder recorder, PrintStream out) {
+        var total = recorder.getCount();
+        if (total == 0) {
+            return;
+        }
+        // Bucket boundaries in microseconds: 0, 1, 2, 5, 10, 20, 50, ... covering min to max.
+        var firstBoundary = 0L;
+        while (nextBoundary(firstBoundary) <= recorder.getMinMicros()) {
+            firstBoundary = nextBoundary(firstBoundary);
+        }
+        var nBuckets = 1;
+        for (var boundary = nextBoundary(firstBoundary); boundary <= recorder.getMaxMicros(); boundary = nextBoundary(boundary)) {
+            nBuckets++;
+        }
+        var buckets = new long[nBuckets];
+        var start = firstBoundary;
+        recorder.forEachBucket((lowMicros, highMicros, count) -> {
+            // Place each recorder bucket by its midpoint.
+            var midMicros = (lowMicros + highMicros) / 2;
+            var bucketIdx = 0;
+            for (var boundary = nextBoundary(start); boundary <= midMicros && bucketIdx < buckets.length - 1; boundary = nextBoundary(boundary)) {
+                bucketIdx++;
+            }
+            buckets[bucketIdx] += count;
+        });
+
+        var rangeStartMicros = firstBoundary;
+        for (var bucketIdx = 0; bucketIdx < nBuckets; bucketIdx++) {
+            var rangeEndMicros = nextBoundary(rangeStartMicros);
+            var percentage = 100 * (buckets[bucketIdx] / (double) total);
+            var upperBound = ")";
+            if (bucketIdx == nBuckets - 1) {
+                // Show an inclusive upper bound. The last bucket includes the maximum time.
+                upperBound = "]";
+            }
+            out.printf("[%s-%ss%s : %d (%2.02f%%)\n", formatSec(rangeStartMicros), formatSec(rangeEndMicros), upperBound,
+                    buckets[bucketIdx], percentage);
+            rangeStartMicros = rangeEndMicros;
+        }
+    }
+
+    public static void writePercentileDistribution(LatencyRecorder recorder, PrintStream out) {
+        out.format("%12s %14s %10s %14s\n\n", "Value", "Percentile", "TotalCount", "1/(1-Percentile)");
+        var total = recorder.getCount();
+        if (total > 0) {
+            var iteration = new Object() {
+                long cumulative = 0;
+                double percentileToIterateTo = 0.0;
+            };
+            recorder.forEachBucket((lowMicros, highMicros, count) -> {
+                iteration.cumulative += count;
+                var valueMs = Math.min(highMicros, recorder.getMaxMicros()) / MICROS_PER_MILLI;
+                while (100.0 * iteration.cumulative / total >= iteration.percentileToIterateTo) {
+                    var percentile = iteration.percentileToIterateTo / 100.0;
+                    out.format("%12.3f %2.12f %10d %14.2f\n", valueMs, percentile, iteration.cumulative, 1 / (1 - percentile));
+                    iteration.percentileToIterateTo = nextPercentile(iteration.percentileToIterateTo);
+                    if (iteration.cumulative == total) {
+                        // Like HdrHistogram, report the last bucket once, then finish at 100% below.
+                        break;
+                    }
+                }
+            });
+            out.format("%12.3f %2.12f %10d\n", recorder.getMaxMicros() / MICROS_PER_MILLI, 1.0, total);
+        }
+
+        var mean = recorder.getMeanMicros();
+        var sumOfSquaredDeviations = new double[]{0.0};
+        recorder.forEachBucket((lowMicros, highMicros, count) -> {
+            var deviation = (lowMicros + highMicros) / 2.0 - mean;
+            sumOfSquaredDeviations[0] += deviation * deviation * count;
+        });
+        var stdDeviation = total == 0 ? 0.0 : Math.sqrt(sumOfSquaredDeviations[0] / total);
+        out.format("#[Mean    = %12.3f, StdDeviation   = %12.3f]\n", mean / MICROS_PER_MILLI, stdDeviation / MICROS_PER_MILLI);
+        out.format("#[Max     = %12.3f, Total count    = %12d]\n", recorder.getMaxMicros() / MICROS_PER_MILLI, total);
+        out.format("#[Buckets = %12d, SubBuckets     = %12d]\n", LatencyRecorder.BUCKET_COUNT, LatencyRecorder.SUB_BUCKET_COUNT);
+    }
+
+    // nextPercentile returns the next percentile to report. Steps get smaller approaching 100%.
+    static double nextPercentile(double percentile) {
+        var halfDistances = (long) (Math.log(100.0 / (100.0 - percentile)) / Math.log(2)) + 1;
+        var reportingTicks = PERCENTILE_TICKS_PER_HALF_DISTANCE * Math.pow(2, halfDistances);
+        return percentile + 100.0 / reportingTicks;
+    }
+
+    // nextBoundary returns the next value in the sequence 0, 1, 2, 5, 10, 20, 50, ...
+    static long nextBoundary(long boundary) {
+        if (boundary < 1) {
+            return 1;
+        }
+        var decade = 1L;
+        while (decade * 10 <= boundary) {
+            decade *= 10;
+        }
+        var leading = boundary / decade;
+        if (leading < 2) {
+            return 2 * decade;
+        }
+        if (leading < 5) {
+            return 5 * decade;
+        }
+        return 10 * decade;
+    }
+
+    static String formatSec(long micros) {
+        return BigDecimal.valueOf(micros, 6).stripTrailingZeros().toPlainString();
+    }
+}
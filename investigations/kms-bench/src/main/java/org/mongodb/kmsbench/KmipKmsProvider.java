@@ -0,0 +1,91 @@
+// KmipKmsProvider uses a KMIP server. KMIP servers authenticate clients with a TLS client certificate.
+// Set the following environment variables:
+// - KMIP_ENDPOINT to the "host:port" of the KMIP server.
+// - KMIP_KEYSTORE_FILE to a PKCS12 file with the client certificate and private key.
+// - KMIP_KEYSTORE_PASSWORD to the keystore password.
+// - KMIP_TRUSTSTORE_FILE to a PKCS12 file with the CA certificate of the KMIP server. Optional. Defaults to the JVM trust store.
+// - KMIP_TRUSTSTORE_PASSWORD to the trust store password.
+// - KMIP_KEY_ID to the KMIP unique identifier of an existing secret data object. Optional. By default, the driver creates one.
+// There is no mock KMS server for KMIP.
+
+package org.mongodb.kmsbench;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Map;
+
+import static org.mongodb.kmsbench.Env.getEnv;
+import static org.mongodb.kmsbench.Env.getRequiredEnv;
+
+public class KmipKmsProvider implements KmsProvider {
+
+    private final SSLContext sslContext;
+
+    public KmipKmsProvider() throws IOException {
+        try {
+            var keyStore = loadKeyStore(getRequiredEnv("KMIP_KEYSTORE_FILE"), getRequiredEnv("KMIP_KEYSTORE_PASSWORD"));
+            var kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            kmf.init(keyStore, getRequiredEnv("KMIP_KEYSTORE_PASSWORD").toCharArray());
+            var tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            var trustStoreFile = getEnv("KMIP_TRUSTSTORE_FILE", "");
+            // A null trust store uses the JVM trust store.
+            tmf.init(trustStoreFile.isEmpty() ? null : loadKeyStore(trustStoreFile, getRequiredEnv("KMIP_TRUSTSTORE_PASSWORD")));
+            sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Error: unable to load KMIP client certificate", e);
+        }
+    }
+
+    private static KeyStore loadKeyStore(String file, String password) throws IOException, GeneralSecurityException {
+        try (InputStream in = Files.newInputStream(Paths.get(file))) {
+            var keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(in, password.toCharArray());
+            return keyStore;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "kmip";
+    }
+
+    @Override
+    public Map<String, Object> getCredentials() {
+        return Map.of("endpoint", getRequiredEnv("KMIP_ENDPOINT"));
+    }
+
+    @Override
+    public BsonDocument getMasterKey() {
+        var masterKey = new BsonDocument();
+        var keyId = getEnv("KMIP_KEY_ID", "");
+        if (!keyId.isEmpty()) {
+            masterKey.append("keyId", new BsonString(keyId));
+        }
+        return masterKey;
+    }
+
+    @Override
+    public SSLContext getSslContext() {
+        return sslContext;
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        return Map.of();
+    }
+
+    @Override
+    public void close() {
+    }
+}
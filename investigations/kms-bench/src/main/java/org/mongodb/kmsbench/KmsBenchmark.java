@@ -0,0 +1,221 @@
+// KmsBenchmark repeatedly uses ClientEncryption objects to encrypt data with a DEK protected by a KMS provider.
+// This is intended to test repeated KMS requests. The KMS provider is plugged in as a KmsProvider.
+// Set USE_MOCK_KMS=true to send KMS requests to an in-process mock KMS server (aws and azure only). Provider environment
+// variables are not required with USE_MOCK_KMS=true. The number of mock KMS requests is printed with the statistics.
+// Set MOCK_KMS_LATENCY to delay each mock KMS response. See LatencyModel for the syntax. Examples:
+// - MOCK_KMS_LATENCY=fixed:50ms
+// - MOCK_KMS_LATENCY=lognormal:350ms,0.3
+// - MOCK_KMS_LATENCY=histogram:/path/to/histogram.txt to replay a histogram printed by a prior run.
+// Set MODE to select the workload. Each mode documents its own environment variables:
+// - create, pool and shared (the default is create): the request loop. See RequestLoop.
+// - sweep: encrypt throughput by BSON type and payload size with a cached DEK. See PayloadSweep.
+// - algorithms: latency and ciphertext size across EncryptOptions algorithms with a cached DEK. See AlgorithmComparison.
+// - range: Queryable Encryption range options with a cached DEK. See RangeSweep.
+// - batch: encrypting the fields of a document one call at a time against a BatchEncryptor. See BatchComparison.
+// - auto and query-analysis: insert and find through a MongoClient with automatic encryption. See AutoEncryptionBenchmark.
+// - startup: time to the first encrypt in fresh JVMs and in this JVM. See StartupBenchmark.
+// - reactive: the sync driver against the reactive streams driver. See ReactiveComparison.
+// - virtual: one encrypt per virtual thread, with carrier pinning recorded by JFR. Requires Java 21 and kms-bench built
+//   with JDK 21, which enables the java21 profile. See VirtualThreadBenchmark.
+// - token-cache: the create loop with and without AZURE_TOKEN_CACHE. See TokenCacheComparison.
+// - credentials: the create loop with static credentials and with credential suppliers. See CredentialSupplierComparison.
+// Options for how ClientEncryption gets the KMS provider credentials. They apply to every mode except token-cache and
+// credentials, which compare the ways of supplying credentials themselves. Modes with automatic encryption (auto,
+// query-analysis and the inserts of range) copy the suppliers into AutoEncryptionSettings. The forked JVMs of startup
+// create their own token cache or credential supplier. See StartupBenchmark.
+// - AZURE_TOKEN_CACHE to "true" to share Azure access tokens across ClientEncryption instances through an AzureTokenCache,
+//   instead of each ClientEncryption fetching its own. Requires KMS_PROVIDER=azure. The cache's token fetches are reported
+//   separately. With a mock KMS server, they are included in "Token requests".
+// - AZURE_TOKEN_REFRESH_MARGIN to fetch a new token when the cached token expires within this time. Defaults to 300s.
+// - CREDENTIAL_SUPPLIER to "true" to give ClientEncryption the KMS provider credentials through a
+//   RefreshingCredentialSupplier in kmsProviderPropertySuppliers, instead of in kmsProviders. The supplier caches the
+//   credentials and refreshes them on a background thread before they expire. Cannot be combined with AZURE_TOKEN_CACHE.
+//   See CredentialSupplierComparison for the options of the supplier's source.
+
+package org.mongodb.kmsbench;
+
+import com.mongodb.AutoEncryptionSettings;
+import com.mongodb.ClientEncryptionSettings;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.model.vault.DataKeyOptions;
+import com.mongodb.client.vault.ClientEncryptions;
+import org.bson.BsonBinary;
+
+import javax.net.ssl.SSLContext;
+import java.lang.reflect.InvocationTargetException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.mongodb.kmsbench.Env.getEnv;
+
+public class KmsBenchmark {
+
+    public static final ConnectionString CONNECTION_STRING = new ConnectionString("mongodb://localhost:27017");
+    public static final MongoNamespace VAULT_NAMESPACE = new MongoNamespace("csfle", "vault");
+    static final String ENCRYPTION_ALGORITHM = "AEAD_AES_256_CBC_HMAC_SHA_512-Deterministic";
+    static final String DATABASE = "test";
+    static final String COLLECTION = "coll";
+
+    // run creates the KMS provider named providerName and runs the benchmark with it.
+    public static void run(String providerName) throws Exception {
+        var useMockKms = Boolean.parseBoolean(getEnv("USE_MOCK_KMS", "false"));
+        var latency = LatencyModel.parse(getEnv("MOCK_KMS_LATENCY", "none"));
+        System.out.printf("KMS provider          : %s\n", providerName);
+        if (useMockKms) {
+            System.out.printf("Mock KMS latency      : %s\n", latency);
+        }
+        try (var provider = KmsProviders.create(providerName, useMockKms, latency)) {
+            run(provider);
+        }
+    }
+
+    // Mode runs one workload with the shared setup.
+    public interface Mode {
+        void run(BenchmarkContext context) throws Exception;
+    }
+
+    // MODES maps each MODE to its workload.
+    static final Map<String, Mode> MODES = new LinkedHashMap<>();
+
+    static {
+        MODES.put("create", context -> RequestLoop.run(context, "create"));
+        MODES.put("pool", context -> RequestLoop.run(context, "pool"));
+        MODES.put("shared", context -> RequestLoop.run(context, "shared"));
+        MODES.put("sweep", PayloadSweep::runMode);
+        MODES.put("algorithms", AlgorithmComparison::runMode);
+        MODES.put("range", RangeSweep::runMode);
+        MODES.put("batch", BatchComparison::runMode);
+        MODES.put("auto", context -> AutoEncryptionBenchmark.runMode(context, false));
+        MODES.put("query-analysis", context -> AutoEncryptionBenchmark.runMode(context, true));
+        MODES.put("startup", StartupBenchmark::runMode);
+        MODES.put("reactive", ReactiveComparison::runMode);
+        MODES.put("virtual", KmsBenchmark::runVirtualThreadBenchmark);
+        MODES.put("token-cache", TokenCacheComparison::runMode);
+        MODES.put("credentials", CredentialSupplierComparison::runMode);
+    }
+
+    public static void run(KmsProvider provider) throws Exception {
+        var modeName = getEnv("MODE", "create");
+        var mode = MODES.get(modeName);
+        if (null == mode) {
+            throw new IllegalArgumentException("Error: unrecognized MODE: " + modeName + ". Expected " + String.join(", ", MODES.keySet()));
+        }
+        var phaseTimer = Boolean.parseBoolean(getEnv("PHASE_TIMING", "false")) ? new PhaseTimer() : null;
+        var keyVaultSettingsBuilder = MongoClientSettings.builder()
+                .applyConnectionString(CONNECTION_STRING);
+        if (null != phaseTimer) {
+            keyVaultSettingsBuilder.addCommandListener(phaseTimer.getCommandListener())
+                    .applyToConnectionPoolSettings(builder -> builder.addConnectionPoolListener(phaseTimer.getConnectionPoolListener()));
+        }
+        var ceSettingsBuilder = ClientEncryptionSettings.builder()
+                .keyVaultMongoClientSettings(keyVaultSettingsBuilder.build())
+                .keyVaultNamespace(VAULT_NAMESPACE.getFullName())
+                .kmsProviders(Map.of(provider.getName(), provider.getCredentials()));
+        if (null != provider.getSslContext() || null != phaseTimer) {
+            var sslContext = null != provider.getSslContext() ? provider.getSslContext() : SSLContext.getDefault();
+            if (null != phaseTimer) {
+                // Time KMS exchanges on the sockets the driver creates.
+                sslContext = phaseTimer.wrapSslContext(sslContext);
+            }
+            ceSettingsBuilder.kmsProviderSslContextMap(Map.of(provider.getName(), sslContext));
+        }
+        var useTokenCache = Boolean.parseBoolean(getEnv("AZURE_TOKEN_CACHE", "false"));
+        var useCredentialSupplier = Boolean.parseBoolean(getEnv("CREDENTIAL_SUPPLIER", "false"));
+        if (useTokenCache && useCredentialSupplier) {
+            throw new IllegalArgumentException("Error: AZURE_TOKEN_CACHE and CREDENTIAL_SUPPLIER both supply the azure credentials. Set one");
+        }
+        var tokenCache = useTokenCache ? createTokenCache(provider, "AZURE_TOKEN_CACHE") : null;
+        var credentialSupplier = useCredentialSupplier ? CredentialSupplierComparison.createSupplier(provider) : null;
+        // Close the supplier whichever mode runs, so its refresh thread does not outlive the run.
+        try (credentialSupplier) {
+            var staticCeSettings = ceSettingsBuilder.build();
+            var ceSettings = configureCredentials(provider, staticCeSettings, tokenCache, credentialSupplier);
+
+            // Drop prior data.
+            try (var client = MongoClients.create(MongoClientSettings.builder()
+                    .applyConnectionString(CONNECTION_STRING)
+                    .build())) {
+                client.getDatabase(VAULT_NAMESPACE.getDatabaseName()).getCollection(VAULT_NAMESPACE.getCollectionName()).drop();
+                var collection = client.getDatabase(DATABASE).getCollection(COLLECTION);
+                collection.drop();
+            }
+
+            // Create a DEK.
+            BsonBinary dataKey;
+            try (var encryptor = ClientEncryptions.create(ceSettings)) {
+                var dko = new DataKeyOptions();
+                var masterKey = provider.getMasterKey();
+                if (null != masterKey) {
+                    dko.masterKey(masterKey);
+                }
+                dataKey = encryptor.createDataKey(provider.getName(), dko);
+            }
+
+            mode.run(new BenchmarkContext(provider, staticCeSettings, ceSettings, dataKey, phaseTimer, tokenCache, credentialSupplier));
+        }
+    }
+
+    // runVirtualThreadBenchmark runs VirtualThreadBenchmark, which is only compiled by the java21 profile. Use reflection so
+    // the rest of kms-bench still compiles with release 11.
+    static void runVirtualThreadBenchmark(BenchmarkContext context) throws Exception {
+        Class<?> benchmarkClass;
+        try {
+            benchmarkClass = Class.forName("org.mongodb.kmsbench.VirtualThreadBenchmark");
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Error: MODE=virtual requires kms-bench built with JDK 21 or newer, which enables the java21 profile");
+        }
+        try {
+            benchmarkClass.getMethod("runMode", BenchmarkContext.class).invoke(null, context);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    // createTokenCache returns an AzureTokenCache for provider. option names the option that requires it, for the error.
+    static AzureTokenCache createTokenCache(KmsProvider provider, String option) {
+        if (!"azure".equals(provider.getName())) {
+            throw new IllegalArgumentException("Error: " + option + " requires the azure KMS provider, got: " + provider.getName());
+        }
+        return new AzureTokenCache(provider.getCredentials(), provider.getSslContext(),
+                LatencyModel.parseDurationNs(getEnv("AZURE_TOKEN_REFRESH_MARGIN", "300s")));
+    }
+
+    // configureCredentials returns staticCeSettings, or settings that get the credentials of provider from tokenCache or
+    // credentialSupplier if one is not null.
+    static ClientEncryptionSettings configureCredentials(KmsProvider provider, ClientEncryptionSettings staticCeSettings,
+                                                         AzureTokenCache tokenCache, RefreshingCredentialSupplier credentialSupplier) {
+        if (null != tokenCache) {
+            return tokenCache.configure(staticCeSettings);
+        }
+        if (null != credentialSupplier) {
+            return RefreshingCredentialSupplier.configure(staticCeSettings, provider.getName(), credentialSupplier);
+        }
+        return staticCeSettings;
+    }
+
+    // autoEncryptionSettingsBuilder returns a builder with the key vault namespace and KMS provider options of ceSettings.
+    // The KMS provider property suppliers are copied too: with AZURE_TOKEN_CACHE or CREDENTIAL_SUPPLIER, the provider's
+    // entry in kmsProviders is empty and the credentials come from a supplier.
+    static AutoEncryptionSettings.Builder autoEncryptionSettingsBuilder(ClientEncryptionSettings ceSettings) {
+        return AutoEncryptionSettings.builder()
+                .keyVaultNamespace(ceSettings.getKeyVaultNamespace())
+                .kmsProviders(ceSettings.getKmsProviders())
+                .kmsProviderPropertySuppliers(ceSettings.getKmsProviderPropertySuppliers())
+                .kmsProviderSslContextMap(ceSettings.getKmsProviderSslContextMap());
+    }
+
+    // subtractCounts returns after - before for each request type in after, keeping the order of after.
+    static Map<String, Long> subtractCounts(Map<String, Long> after, Map<String, Long> before) {
+        var counts = new LinkedHashMap<String, Long>();
+        for (var entry : after.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue() - before.getOrDefault(entry.getKey(), 0L));
+        }
+        return counts;
+    }
+}
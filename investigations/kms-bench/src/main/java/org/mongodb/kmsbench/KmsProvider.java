@@ -0,0 +1,31 @@
+// KmsProvider plugs a KMS provider into KmsBenchmark. It supplies the kmsProviders entry, the master key for new DEKs and,
+// for a mock KMS server, the SSLContext and request counts. See KmsProviders to create one by name.
+
+package org.mongodb.kmsbench;
+
+import org.bson.BsonDocument;
+
+import javax.net.ssl.SSLContext;
+import java.util.Map;
+
+public interface KmsProvider extends AutoCloseable {
+
+    // getName returns the KMS provider name used in kmsProviders and createDataKey, e.g. "aws".
+    String getName();
+
+    // getCredentials returns the kmsProviders entry for this provider.
+    Map<String, Object> getCredentials();
+
+    // getMasterKey returns the master key for DataKeyOptions, or null if the provider does not take one.
+    BsonDocument getMasterKey();
+
+    // getSslContext returns the SSLContext for KMS requests, or null to use the default.
+    SSLContext getSslContext();
+
+    // getRequestCounts returns the number of requests a mock KMS server received by type, in a stable order. Returns an
+    // empty map if requests are not counted.
+    Map<String, Long> getRequestCounts();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,35 @@
+// KmsProviders creates a KmsProvider by name: "aws", "azure", "gcp", "kmip" or "local".
+// With useMock, aws and azure send requests to an in-process mock KMS server that delays each response with latency.
+
+package org.mongodb.kmsbench;
+
+import java.io.IOException;
+
+public class KmsProviders {
+
+    public static KmsProvider create(String name, boolean useMock, LatencyModel latency) throws IOException {
+        switch (name) {
+            case "aws":
+                return new AwsKmsProvider(useMock ? MockAwsKmsServer.start(latency) : null);
+            case "azure":
+                return new AzureKmsProvider(useMock ? MockAzureKmsServer.start(latency) : null);
+            case "gcp":
+                requireNoMock(name, useMock);
+                return new GcpKmsProvider();
+            case "kmip":
+                requireNoMock(name, useMock);
+                return new KmipKmsProvider();
+            case "local":
+                // The local provider does not send KMS requests. There is nothing to mock.
+                return new LocalKmsProvider();
+            default:
+                throw new IllegalArgumentException("Error: unrecognized KMS provider: " + name + ". Expected aws, azure, gcp, kmip or local");
+        }
+    }
+
+    private static void requireNoMock(String name, boolean useMock) {
+        if (useMock) {
+            throw new IllegalArgumentException("Error: no mock KMS server for " + name + ". Expected aws or azure with USE_MOCK_KMS=true");
+        }
+    }
+}
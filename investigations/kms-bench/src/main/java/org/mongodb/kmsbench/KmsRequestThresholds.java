@@ -0,0 +1,80 @@
+// KmsRequestThresholds is a maximum number of KMS requests per benchmark request, by operation. It turns the mock KMS request
+// counts into a regression check for DEK caching and token caching.
+// The syntax is a comma separated list of operation=max. The operation matches a request count whose name contains it as a
+// word, ignoring case. An entry without an operation applies to every request count. Examples:
+// - "Decrypt=1" for at most one AWS KMS Decrypt request per request.
+// - "unwrapKey=1,token=0.01" for at most one Azure unwrapKey request per request and one token request per 100 requests.
+// - "0" for no KMS requests, for example in MODE=pool after warm-up.
+
+package org.mongodb.kmsbench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class KmsRequestThresholds {
+
+    private final String spec;
+    // maxPerRequest maps a lower case operation, or "" for every operation, to its threshold.
+    private final Map<String, Double> maxPerRequest;
+
+    private KmsRequestThresholds(String spec, Map<String, Double> maxPerRequest) {
+        this.spec = spec;
+        this.maxPerRequest = maxPerRequest;
+    }
+
+    public static KmsRequestThresholds parse(String spec) {
+        var maxPerRequest = new LinkedHashMap<String, Double>();
+        for (var entry : spec.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            var separator = entry.indexOf('=');
+            var operation = separator < 0 ? "" : entry.substring(0, separator).trim().toLowerCase(Locale.ROOT);
+            var max = separator < 0 ? entry : entry.substring(separator + 1).trim();
+            try {
+                maxPerRequest.put(operation, Double.parseDouble(max));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Error: expected operation=max, got: " + entry);
+            }
+        }
+        return new KmsRequestThresholds(spec, maxPerRequest);
+    }
+
+    public boolean isEmpty() {
+        return maxPerRequest.isEmpty();
+    }
+
+    // check returns a message for each request count over its threshold, or for each operation that matches no request
+    // count. counts are request counts by name, for requests benchmark requests.
+    public List<String> check(Map<String, Long> counts, long requests) {
+        var violations = new ArrayList<String>();
+        for (var threshold : maxPerRequest.entrySet()) {
+            var operation = threshold.getKey();
+            var matched = false;
+            for (var count : counts.entrySet()) {
+                if (!operation.isEmpty() && !Arrays.asList(count.getKey().toLowerCase(Locale.ROOT).split("\\s+")).contains(operation)) {
+                    continue;
+                }
+                matched = true;
+                var perRequest = count.getValue() / (double) Math.max(1, requests);
+                if (perRequest > threshold.getValue()) {
+                    violations.add(String.format("%s: %.4f per request exceeds %s", count.getKey(), perRequest, threshold.getValue()));
+                }
+            }
+            if (!matched) {
+                violations.add("no KMS request count matches operation: " + operation + ". Counts: " + counts.keySet());
+            }
+        }
+        return violations;
+    }
+
+    @Override
+    public String toString() {
+        return spec;
+    }
+}
@@ -0,0 +1,184 @@
+// LatencyModel samples per-request delays for the mock KMS servers.
+// A model is parsed from a specification string:
+// - "none" for no delay.
+// - "fixed:50ms" for a constant delay.
+// - "uniform:20ms,80ms" for a delay uniformly distributed between a minimum and maximum.
+// - "lognormal:350ms,0.3" for a log-normal delay with the given median and sigma. Larger sigma gives a longer tail.
+// - "histogram:/path/to/histogram.txt" to replay a histogram printed by KmsBenchmark. Lines like
+//   "[0.19-0.38s) : 702 (70.20%)" are read. A bucket is chosen by its count, then a delay is chosen uniformly within the bucket.
+// Durations accept the suffixes "us", "ms" and "s".
+
+package org.mongodb.kmsbench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+public abstract class LatencyModel {
+
+    static final LatencyModel NONE = new LatencyModel() {
+        @Override
+        long sampleNs() {
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return "none";
+        }
+    };
+
+    // HISTOGRAM_LINE matches "[0.19-0.38s) : 702 (70.20%)" and "[1.70-1.89s] : 1 (0.10%)".
+    static final Pattern HISTOGRAM_LINE = Pattern.compile("^\\[([0-9.]+)-([0-9.]+)s[)\\]]\\s*:\\s*([0-9]+).*$");
+
+    // sampleNs returns the next delay in nanoseconds.
+    abstract long sampleNs();
+
+    // delay sleeps for the next sampled delay.
+    public void delay() throws InterruptedException {
+        var delayNs = sampleNs();
+        if (delayNs > 0) {
+            TimeUnit.NANOSECONDS.sleep(delayNs);
+        }
+    }
+
+    public static LatencyModel parse(String spec) throws IOException {
+        var colon = spec.indexOf(':');
+        var kind = colon < 0 ? spec : spec.substring(0, colon);
+        var params = colon < 0 ? new String[0] : spec.substring(colon + 1).split(",");
+        switch (kind) {
+            case "none":
+                return NONE;
+            case "fixed":
+                requireParams(spec, params, 1);
+                return fixed(parseDurationNs(params[0]));
+            case "uniform":
+                requireParams(spec, params, 2);
+                return uniform(parseDurationNs(params[0]), parseDurationNs(params[1]));
+            case "lognormal":
+                requireParams(spec, params, 2);
+                return lognormal(parseDurationNs(params[0]), Double.parseDouble(params[1].trim()));
+            case "histogram":
+                if (colon < 0) {
+                    throw new IllegalArgumentException("Error: histogram latency model requires a path: " + spec);
+                }
+                // Use the remainder of the specification so the path may contain commas.
+                return histogram(Path.of(spec.substring(colon + 1)));
+            default:
+                throw new IllegalArgumentException("Error: unrecognized latency model: " + spec);
+        }
+    }
+
+    static LatencyModel fixed(long delayNs) {
+        return new LatencyModel() {
+            @Override
+            long sampleNs() {
+                return delayNs;
+            }
+
+            @Override
+            public String toString() {
+                return String.format("fixed %.2fms", delayNs / 1_000_000.0);
+            }
+        };
+    }
+
+    static LatencyModel uniform(long minNs, long maxNs) {
+        if (maxNs < minNs) {
+            throw new IllegalArgumentException("Error: uniform latency maximum is less than minimum");
+        }
+        return new LatencyModel() {
+            @Override
+            long sampleNs() {
+                return minNs + (long) (ThreadLocalRandom.current().nextDouble() * (maxNs - minNs));
+            }
+
+            @Override
+            public String toString() {
+                return String.format("uniform %.2fms-%.2fms", minNs / 1_000_000.0, maxNs / 1_000_000.0);
+            }
+        };
+    }
+
+    static LatencyModel lognormal(long medianNs, double sigma) {
+        return new LatencyModel() {
+            @Override
+            long sampleNs() {
+                return (long) (medianNs * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+            }
+
+            @Override
+            public String toString() {
+                return String.format("lognormal median %.2fms sigma %.2f", medianNs / 1_000_000.0, sigma);
+            }
+        };
+    }
+
+    static LatencyModel histogram(Path path) throws IOException {
+        var startsNs = new ArrayList<Long>();
+        var endsNs = new ArrayList<Long>();
+        var cumulativeCounts = new ArrayList<Long>();
+        var total = 0L;
+        for (var line : Files.readAllLines(path)) {
+            var matcher = HISTOGRAM_LINE.matcher(line.trim());
+            if (!matcher.matches()) {
+                continue;
+            }
+            var count = Long.parseLong(matcher.group(3));
+            if (count == 0) {
+                continue;
+            }
+            total += count;
+            startsNs.add((long) (Double.parseDouble(matcher.group(1)) * 1_000_000_000L));
+            endsNs.add((long) (Double.parseDouble(matcher.group(2)) * 1_000_000_000L));
+            cumulativeCounts.add(total);
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("Error: no histogram buckets found in " + path);
+        }
+        var totalCount = total;
+        return new LatencyModel() {
+            @Override
+            long sampleNs() {
+                var random = ThreadLocalRandom.current();
+                var target = random.nextLong(totalCount);
+                var bucketIdx = 0;
+                while (cumulativeCounts.get(bucketIdx) <= target) {
+                    bucketIdx++;
+                }
+                var startNs = startsNs.get(bucketIdx);
+                var endNs = endsNs.get(bucketIdx);
+                return startNs + (long) (random.nextDouble() * (endNs - startNs));
+            }
+
+            @Override
+            public String toString() {
+                return "histogram " + path + " (" + totalCount + " samples)";
+            }
+        };
+    }
+
+    static long parseDurationNs(String duration) {
+        duration = duration.trim();
+        if (duration.endsWith("us")) {
+            return (long) (Double.parseDouble(duration.substring(0, duration.length() - 2)) * 1_000L);
+        }
+        if (duration.endsWith("ms")) {
+            return (long) (Double.parseDouble(duration.substring(0, duration.length() - 2)) * 1_000_000L);
+        }
+        if (duration.endsWith("s")) {
+            return (long) (Double.parseDouble(duration.substring(0, duration.length() - 1)) * 1_000_000_000L);
+        }
+        throw new IllegalArgumentException("Error: duration requires a unit of us, ms or s: " + duration);
+    }
+
+    private static void requireParams(String spec, String[] params, int expected) {
+        if (params.length != expected) {
+            throw new IllegalArgumentException("Error: expected " + expected + " parameters in latency model: " + spec);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+// LatencyRecorder is a constant-memory latency histogram with microsecond resolution.
+// Values are counted in log-linear buckets like HdrHistogram: each power-of-two range is split into 1024 linear
+// sub-buckets, so a recorded value is reported within 0.1% of its true value. Min, max and sum are tracked exactly.
+// Recording does not allocate and is safe to call from many threads. Values above the highest trackable value (one hour)
+// are counted at the highest trackable value and still update the exact max.
+
+package org.mongodb.kmsbench;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyRecorder {
+
+    static final long HIGHEST_TRACKABLE_MICROS = 3_600_000_000L;
+    // SUB_BUCKET_HALF_COUNT_MAGNITUDE sets the precision. 2^10 = 1024 sub-buckets per half range gives 3 significant digits.
+    static final int SUB_BUCKET_HALF_COUNT_MAGNITUDE = 10;
+    static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_HALF_COUNT_MAGNITUDE;
+    static final int SUB_BUCKET_COUNT = SUB_BUCKET_HALF_COUNT * 2;
+    static final long SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+    static final int BUCKET_COUNT = bucketIndex(HIGHEST_TRACKABLE_MICROS) + 1;
+    static final int COUNTS_LENGTH = (BUCKET_COUNT + 1) * SUB_BUCKET_HALF_COUNT;
+
+    public interface BucketConsumer {
+        // accept is called for each non-empty bucket in increasing order. Recorded values v satisfy lowMicros <= v <= highMicros.
+        void accept(long lowMicros, long highMicros, long count);
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(COUNTS_LENGTH);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong minMicros = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void recordNs(long durationNs) {
+        recordMicros((durationNs + 500) / 1_000);
+    }
+
+    public void recordMicros(long micros) {
+        if (micros < 0) {
+            throw new IllegalArgumentException("Error: negative latency: " + micros + "us");
+        }
+        counts.incrementAndGet(countsIndex(Math.min(micros, HIGHEST_TRACKABLE_MICROS)));
+        totalCount.incrementAndGet();
+        sumMicros.addAndGet(micros);
+        minMicros.accumulateAndGet(micros, Math::min);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    // add adds the counts of other to this recorder.
+    public void add(LatencyRecorder other) {
+        for (var i = 0; i < COUNTS_LENGTH; i++) {
+            var count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+        totalCount.addAndGet(other.totalCount.get());
+        sumMicros.addAndGet(other.sumMicros.get());
+        minMicros.accumulateAndGet(other.minMicros.get(), Math::min);
+        maxMicros.accumulateAndGet(other.maxMicros.get(), Math::max);
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public long getMinMicros() {
+        return totalCount.get() == 0 ? 0 : minMicros.get();
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    public double getMeanMicros() {
+        var count = totalCount.get();
+        return count == 0 ? 0 : sumMicros.get() / (double) count;
+    }
+
+    // getValueAtPercentileMicros returns the value that percentile percent of recorded values are at or below.
+    // percentile is in [0, 100].
+    public long getValueAtPercentileMicros(double percentile) {
+        var count = totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        var countAtPercentile = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.0) / 100.0 * count));
+        var cumulative = 0L;
+        for (var i = 0; i < COUNTS_LENGTH; i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= countAtPercentile) {
+                var micros = highestEquivalentMicros(i);
+                if (micros >= HIGHEST_TRACKABLE_MICROS) {
+                    // Values above the highest trackable value share the last bucket. Report the exact max.
+                    return getMaxMicros();
+                }
+                return Math.min(micros, getMaxMicros());
+            }
+        }
+        return getMaxMicros();
+    }
+
+    public double getValueAtPercentileSec(double percentile) {
+        return getValueAtPercentileMicros(percentile) / 1_000_000.0;
+    }
+
+    public double getMaxSec() {
+        return getMaxMicros() / 1_000_000.0;
+    }
+
+    public void forEachBucket(BucketConsumer consumer) {
+        for (var i = 0; i < COUNTS_LENGTH; i++) {
+            var count = counts.get(i);
+            if (count != 0) {
+                consumer.accept(lowestEquivalentMicros(i), highestEquivalentMicros(i), count);
+            }
+        }
+    }
+
+    static int bucketIndex(long micros) {
+        return 64 - Long.numberOfLeadingZeros(micros | SUB_BUCKET_MASK) - (SUB_BUCKET_HALF_COUNT_MAGNITUDE + 1);
+    }
+
+    static int countsIndex(long micros) {
+        var bucketIdx = bucketIndex(micros);
+        var subBucketIdx = (int) (micros >>> bucketIdx);
+        return ((bucketIdx + 1) << SUB_BUCKET_HALF_COUNT_MAGNITUDE) + (subBucketIdx - SUB_BUCKET_HALF_COUNT);
+    }
+
+    static long lowestEquivalentMicros(int countsIdx) {
+        var bucketIdx = (countsIdx >> SUB_BUCKET_HALF_COUNT_MAGNITUDE) - 1;
+        var subBucketIdx = (countsIdx & (SUB_BUCKET_HALF_COUNT - 1)) + SUB_BUCKET_HALF_COUNT;
+        if (bucketIdx < 0) {
+            // The first half of the first bucket.
+            subBucketIdx -= SUB_BUCKET_HALF_COUNT;
+            bucketIdx = 0;
+        }
+        return (long) subBucketIdx << bucketIdx;
+    }
+
+    static long highestEquivalentMicros(int countsIdx) {
+        var bucketIdx = Math.max(0, (countsIdx >> SUB_BUCKET_HALF_COUNT_MAGNITUDE) - 1);
+        return lowestEquivalentMicros(countsIdx) + (1L << bucketIdx) - 1;
+    }
+}
@@ -0,0 +1,206 @@
+// LoadRunner runs iterations of a workload across a number of workers and records the time of each iteration.
+// Two schedules are supported:
+// - Closed loop (run): workers take iterations from a shared counter until all iterations have run. Each worker starts
+//   its next iteration when the previous one finishes. A stalled iteration delays the iterations behind it, so those
+//   delays are never measured (coordinated omission).
+// - Open loop (runOpenLoop): iterations are issued at a fixed rate regardless of completion time. The time of each
+//   iteration is measured from its intended start time, so time spent waiting for a free worker is included.
+// Workers run on a fixed pool of platform threads, or on virtual threads if the JVM supports them (Java 21+).
+
+package org.mongodb.kmsbench;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+public class LoadRunner {
+
+    public interface Iteration {
+        void run() throws Exception;
+    }
+
+    // WorkerStats summarizes the iterations of one worker. A full histogram per worker would cost a LatencyRecorder's
+    // counts array per worker, which skews heap and GC numbers with many workers, so only the count, sum and max are kept.
+    // Each worker updates its own stats, and they are read after the workers finish.
+    public static class WorkerStats {
+        private long count;
+        private long sumNs;
+        private long maxNs;
+
+        void recordNs(long durationNs) {
+            count++;
+            sumNs += durationNs;
+            maxNs = Math.max(maxNs, durationNs);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMeanSec() {
+            return count == 0 ? 0 : sumNs / (double) count / 1_000_000_000.0;
+        }
+
+        public double getMaxSec() {
+            return maxNs / 1_000_000_000.0;
+        }
+    }
+
+    public static class Result {
+        public final double durationSec;
+        // recorder has the times of all iterations.
+        public final LatencyRecorder recorder;
+        // workerStats has one entry per worker for the closed loop, and is empty for the open loop.
+        public final List<WorkerStats> workerStats;
+
+        Result(double durationSec, LatencyRecorder recorder, List<WorkerStats> workerStats) {
+            this.durationSec = durationSec;
+            this.recorder = recorder;
+            this.workerStats = workerStats;
+        }
+    }
+
+    // createExecutor returns an executor for workers. threads is "platform" or "virtual".
+    static ExecutorService createExecutor(String threads, int workers) {
+        switch (threads) {
+            case "platform":
+                return Executors.newFixedThreadPool(workers);
+            case "virtual":
+                // Use reflection so the harness still compiles with release 11.
+                try {
+                    return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                } catch (NoSuchMethodException e) {
+                    throw new IllegalArgumentException("Error: virtual threads require Java 21 or newer. Running Java "
+                            + System.getProperty("java.version"));
+                } catch (IllegalAccessException | InvocationTargetException e) {
+                    throw new IllegalStateException("Error: unable to create virtual thread executor", e);
+                }
+            default:
+                throw new IllegalArgumentException("Error: unrecognized worker threads: " + threads + ". Expected platform or virtual");
+        }
+    }
+
+    public static Result run(int totalIterations, int workers, String threads, Iteration iteration) throws Exception {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Error: expected at least one worker, got: " + workers);
+        }
+        var executor = createExecutor(threads, workers);
+        var nextIteration = new AtomicInteger();
+        var progressInterval = Math.max(1, totalIterations / 10);
+        // All workers record into one recorder. LatencyRecorder is safe to record from many threads.
+        var recorder = new LatencyRecorder();
+        var workerStats = new ArrayList<WorkerStats>();
+        var futures = new ArrayList<Future<?>>();
+
+        var startTimeNs = System.nanoTime();
+        try {
+            for (var w = 0; w < workers; w++) {
+                var stats = new WorkerStats();
+                workerStats.add(stats);
+                futures.add(executor.submit(() -> {
+                    for (var i = nextIteration.getAndIncrement(); i < totalIterations; i = nextIteration.getAndIncrement()) {
+                        var iterStartTimeNs = System.nanoTime();
+                        iteration.run();
+                        var iterEndTimeNs = System.nanoTime();
+                        recorder.recordNs(iterEndTimeNs - iterStartTimeNs);
+                        stats.recordNs(iterEndTimeNs - iterStartTimeNs);
+
+                        if (i % progressInterval == 0) {
+                            // Print dot to show progress.
+                            System.out.print(".");
+                            System.out.flush();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (var future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    // Stop the other workers on the first failure.
+                    nextIteration.set(totalIterations);
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        var endTimeNs = System.nanoTime();
+        System.out.println();
+
+        return new Result((endTimeNs - startTimeNs) / 1_000_000_000.0, recorder, Collections.unmodifiableList(workerStats));
+    }
+
+    // runOpenLoop issues totalIterations iterations at targetRate iterations per second. workers bounds the number of
+    // concurrent iterations for platform threads. Use enough workers, or virtual threads, to sustain the target rate.
+    // The time of each iteration is measured from its intended start time.
+    public static Result runOpenLoop(int totalIterations, double targetRate, int workers, String threads, Iteration iteration) throws Exception {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Error: expected at least one worker, got: " + workers);
+        }
+        if (targetRate <= 0) {
+            throw new IllegalArgumentException("Error: expected a positive target rate, got: " + targetRate);
+        }
+        var executor = createExecutor(threads, workers);
+        var progressInterval = Math.max(1, totalIterations / 10);
+        var intervalNs = 1_000_000_000.0 / targetRate;
+        // Iterations complete on many threads. LatencyRecorder is safe to record from many threads.
+        var recorder = new LatencyRecorder();
+        var failure = new AtomicReference<Exception>();
+
+        var startTimeNs = System.nanoTime();
+        try {
+            for (var i = 0; i < totalIterations && null == failure.get(); i++) {
+                var intendedStartTimeNs = startTimeNs + (long) (i * intervalNs);
+                for (var sleepNs = intendedStartTimeNs - System.nanoTime(); sleepNs > 0; sleepNs = intendedStartTimeNs - System.nanoTime()) {
+                    LockSupport.parkNanos(sleepNs);
+                }
+                var iterIdx = i;
+                executor.execute(() -> {
+                    try {
+                        iteration.run();
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                        return;
+                    }
+                    var iterEndTimeNs = System.nanoTime();
+                    recorder.recordNs(iterEndTimeNs - intendedStartTimeNs);
+
+                    if (iterIdx % progressInterval == 0) {
+                        // Print dot to show progress.
+                        System.out.print(".");
+                        System.out.flush();
+                    }
+                });
+            }
+            // Wait for issued iterations to complete. Futures are not kept so memory does not grow with the iteration count.
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                if (null != failure.get()) {
+                    break;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (null != failure.get()) {
+            throw failure.get();
+        }
+        var endTimeNs = System.nanoTime();
+        System.out.println();
+        return new Result((endTimeNs - startTimeNs) / 1_000_000_000.0, recorder, List.of());
+    }
+}
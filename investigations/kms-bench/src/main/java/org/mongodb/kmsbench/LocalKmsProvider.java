@@ -0,0 +1,64 @@
+// LocalKmsProvider uses a local master key. DEKs are decrypted in-process, so no KMS requests are sent. Use it as a
+// baseline to separate KMS cost from the rest of ClientEncryption.
+// Set LOCAL_MASTER_KEY to a base64 encoded 96 byte key. Optional. By default, a random key is generated for each run.
+
+package org.mongodb.kmsbench;
+
+import org.bson.BsonDocument;
+
+import javax.net.ssl.SSLContext;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+
+import static org.mongodb.kmsbench.Env.getEnv;
+
+public class LocalKmsProvider implements KmsProvider {
+
+    static final int MASTER_KEY_LENGTH = 96;
+
+    private final byte[] masterKey;
+
+    public LocalKmsProvider() {
+        var encodedKey = getEnv("LOCAL_MASTER_KEY", "");
+        if (encodedKey.isEmpty()) {
+            masterKey = new byte[MASTER_KEY_LENGTH];
+            new SecureRandom().nextBytes(masterKey);
+        } else {
+            masterKey = Base64.getDecoder().decode(encodedKey);
+            if (masterKey.length != MASTER_KEY_LENGTH) {
+                throw new IllegalArgumentException("Error: expected LOCAL_MASTER_KEY to be " + MASTER_KEY_LENGTH
+                        + " bytes, got: " + masterKey.length);
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "local";
+    }
+
+    @Override
+    public Map<String, Object> getCredentials() {
+        return Map.of("key", masterKey);
+    }
+
+    @Override
+    public BsonDocument getMasterKey() {
+        return null;
+    }
+
+    @Override
+    public SSLContext getSslContext() {
+        return null;
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        return Map.of();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,100 @@
+// MockAwsKmsServer is an in-process stand-in for the AWS KMS Encrypt and Decrypt API.
+// It lets KmsBenchmark run without network access to AWS.
+// The mock does not check credentials or protect key material. Encrypt returns the plaintext with a fixed prefix.
+// Requests are counted by operation.
+
+package org.mongodb.kmsbench;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MockAwsKmsServer implements AutoCloseable {
+
+    public static final String KEY_ARN = "arn:aws:kms:us-east-1:000000000000:key/mock";
+    static final String CONTENT_TYPE = "application/x-amz-json-1.1";
+    static final byte[] CIPHERTEXT_PREFIX = "mock-aws-kms:".getBytes(StandardCharsets.US_ASCII);
+
+    private final AtomicLong encryptRequests = new AtomicLong();
+    private final AtomicLong decryptRequests = new AtomicLong();
+    private MockHttpsServer server;
+
+    private MockAwsKmsServer() {
+    }
+
+    public static MockAwsKmsServer start(LatencyModel latency) throws IOException {
+        var mock = new MockAwsKmsServer();
+        mock.server = MockHttpsServer.start("mock-aws-kms", latency, mock::handle);
+        return mock;
+    }
+
+    // getEndpoint returns the "host:port" to use as the AWS masterKey "endpoint".
+    public String getEndpoint() {
+        return server.getEndpoint();
+    }
+
+    // getSslContext returns an SSLContext that trusts the mock server certificate.
+    public SSLContext getSslContext() {
+        return server.getSslContext();
+    }
+
+    public long getEncryptRequests() {
+        return encryptRequests.get();
+    }
+
+    public long getDecryptRequests() {
+        return decryptRequests.get();
+    }
+
+    @Override
+    public void close() {
+        server.close();
+    }
+
+    private MockHttpsServer.Response handle(MockHttpsServer.Request request) {
+        var target = request.getHeader("X-Amz-Target");
+        BsonDocument body;
+        try {
+            body = BsonDocument.parse(request.getBodyAsString());
+        } catch (RuntimeException e) {
+            return error("SerializationException", "request body is not JSON");
+        }
+
+        if ("TrentService.Encrypt".equals(target)) {
+            encryptRequests.incrementAndGet();
+            var plaintext = Base64.getDecoder().decode(body.getString("Plaintext").getValue());
+            var ciphertext = Arrays.copyOf(CIPHERTEXT_PREFIX, CIPHERTEXT_PREFIX.length + plaintext.length);
+            System.arraycopy(plaintext, 0, ciphertext, CIPHERTEXT_PREFIX.length, plaintext.length);
+            return MockHttpsServer.Response.json(200, CONTENT_TYPE, new BsonDocument()
+                    .append("CiphertextBlob", new BsonString(Base64.getEncoder().encodeToString(ciphertext)))
+                    .append("KeyId", body.getString("KeyId")));
+        }
+
+        if ("TrentService.Decrypt".equals(target)) {
+            decryptRequests.incrementAndGet();
+            var ciphertext = Base64.getDecoder().decode(body.getString("CiphertextBlob").getValue());
+            if (ciphertext.length < CIPHERTEXT_PREFIX.length
+                    || !Arrays.equals(CIPHERTEXT_PREFIX, Arrays.copyOf(ciphertext, CIPHERTEXT_PREFIX.length))) {
+                return error("InvalidCiphertextException", "ciphertext was not produced by the mock");
+            }
+            var plaintext = Arrays.copyOfRange(ciphertext, CIPHERTEXT_PREFIX.length, ciphertext.length);
+            return MockHttpsServer.Response.json(200, CONTENT_TYPE, new BsonDocument()
+                    .append("Plaintext", new BsonString(Base64.getEncoder().encodeToString(plaintext)))
+                    .append("KeyId", new BsonString(KEY_ARN)));
+        }
+
+        return error("UnknownOperationException", "unsupported X-Amz-Target: " + target);
+    }
+
+    private static MockHttpsServer.Response error(String type, String message) {
+        return MockHttpsServer.Response.json(400, CONTENT_TYPE, new BsonDocument()
+                .append("__type", new BsonString(type))
+                .append("message", new BsonString(message)));
+    }
+}
@@ -0,0 +1,123 @@
+// MockAzureKmsServer is an in-process stand-in for the Azure identity platform token endpoint and the Azure Key Vault
+// wrapKey and unwrapKey API. It lets KmsBenchmark run without network access to Azure.
+// Both endpoints are served on one port. Use getEndpoint() as the "identityPlatformEndpoint" KMS provider option and as
+// the "keyVaultEndpoint" masterKey option.
+// The mock does not check credentials or protect key material. wrapKey returns the plaintext with a fixed prefix.
+// Requests are counted by operation so token acquisition and key unwrapping can be compared.
+
+package org.mongodb.kmsbench;
+
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MockAzureKmsServer implements AutoCloseable {
+
+    public static final String KEY_NAME = "mock";
+    static final String CONTENT_TYPE = "application/json";
+    static final byte[] CIPHERTEXT_PREFIX = "mock-azure-kms:".getBytes(StandardCharsets.US_ASCII);
+
+    private final AtomicLong tokenRequests = new AtomicLong();
+    private final AtomicLong wrapKeyRequests = new AtomicLong();
+    private final AtomicLong unwrapKeyRequests = new AtomicLong();
+    private MockHttpsServer server;
+
+    private MockAzureKmsServer() {
+    }
+
+    public static MockAzureKmsServer start(LatencyModel latency) throws IOException {
+        var mock = new MockAzureKmsServer();
+        mock.server = MockHttpsServer.start("mock-azure-kms", latency, mock::handle);
+        return mock;
+    }
+
+    // getEndpoint returns the "host:port" to use as "identityPlatformEndpoint" and "keyVaultEndpoint".
+    public String getEndpoint() {
+        return server.getEndpoint();
+    }
+
+    // getSslContext returns an SSLContext that trusts the mock server certificate.
+    public SSLContext getSslContext() {
+        return server.getSslContext();
+    }
+
+    public long getTokenRequests() {
+        return tokenRequests.get();
+    }
+
+    public long getWrapKeyRequests() {
+        return wrapKeyRequests.get();
+    }
+
+    public long getUnwrapKeyRequests() {
+        return unwrapKeyRequests.get();
+    }
+
+    @Override
+    public void close() {
+        server.close();
+    }
+
+    private MockHttpsServer.Response handle(MockHttpsServer.Request request) {
+        // Strip the query string. Key Vault requests include "?api-version=".
+        var path = request.path.split("\\?", 2)[0];
+
+        // Token requests are form encoded: POST /{tenantId}/oauth2/v2.0/token
+        if (path.endsWith("/oauth2/v2.0/token")) {
+            var count = tokenRequests.incrementAndGet();
+            return MockHttpsServer.Response.json(200, CONTENT_TYPE, new BsonDocument()
+                    .append("token_type", new BsonString("Bearer"))
+                    .append("expires_in", new BsonInt32(3599))
+                    .append("access_token", new BsonString("mock-token-" + count)));
+        }
+
+        BsonDocument body;
+        try {
+            body = BsonDocument.parse(request.getBodyAsString());
+        } catch (RuntimeException e) {
+            return error("BadParameter", "request body is not JSON");
+        }
+
+        // Key Vault requests: POST /keys/{keyName}/{keyVersion}/wrapkey and POST /keys/{keyName}/{keyVersion}/unwrapkey
+        if (path.endsWith("/wrapkey")) {
+            wrapKeyRequests.incrementAndGet();
+            var plaintext = Base64.getUrlDecoder().decode(body.getString("value").getValue());
+            var ciphertext = Arrays.copyOf(CIPHERTEXT_PREFIX, CIPHERTEXT_PREFIX.length + plaintext.length);
+            System.arraycopy(plaintext, 0, ciphertext, CIPHERTEXT_PREFIX.length, plaintext.length);
+            return keyOperationReply(path, ciphertext);
+        }
+
+        if (path.endsWith("/unwrapkey")) {
+            unwrapKeyRequests.incrementAndGet();
+            var ciphertext = Base64.getUrlDecoder().decode(body.getString("value").getValue());
+            if (ciphertext.length < CIPHERTEXT_PREFIX.length
+                    || !Arrays.equals(CIPHERTEXT_PREFIX, Arrays.copyOf(ciphertext, CIPHERTEXT_PREFIX.length))) {
+                return error("BadParameter", "ciphertext was not produced by the mock");
+            }
+            return keyOperationReply(path, Arrays.copyOfRange(ciphertext, CIPHERTEXT_PREFIX.length, ciphertext.length));
+        }
+
+        return error("NotFound", "unsupported path: " + path);
+    }
+
+    private MockHttpsServer.Response keyOperationReply(String path, byte[] value) {
+        var kid = "https://" + getEndpoint() + path.substring(0, path.lastIndexOf('/'));
+        return MockHttpsServer.Response.json(200, CONTENT_TYPE, new BsonDocument()
+                .append("kid", new BsonString(kid))
+                .append("value", new BsonString(Base64.getUrlEncoder().withoutPadding().encodeToString(value))));
+    }
+
+    private static MockHttpsServer.Response error(String code, String message) {
+        return MockHttpsServer.Response.json(400, CONTENT_TYPE, new BsonDocument()
+                .append("error", new BsonDocument()
+                        .append("code", new BsonString(code))
+                        .append("message", new BsonString(message))));
+    }
+}
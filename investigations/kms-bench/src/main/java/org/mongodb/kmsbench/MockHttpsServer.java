@@ -0,0 +1,233 @@
+// MockHttpsServer is a minimal HTTPS/1.1 server for in-process KMS stand-ins.
+// com.sun.net.httpserver is not used because it sends "Content-length", and libmongocrypt only recognizes "Content-Length".
+// Each connection serves one request and is then closed. libmongocrypt sends "Connection: close" on every KMS request.
+// Each response is delayed by a sample from a LatencyModel to simulate a remote KMS.
+// The server certificate is a self-signed certificate for localhost and 127.0.0.1 stored in mock-kms.p12. To regenerate it:
+// keytool -genkeypair -alias mock-kms -keyalg RSA -keysize 2048 -validity 36500 -dname "CN=localhost" \
+//     -ext "SAN=dns:localhost,ip:127.0.0.1" -keystore mock-kms.p12 -storetype PKCS12 -storepass changeit
+
+package org.mongodb.kmsbench;
+
+import org.bson.BsonDocument;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class MockHttpsServer implements AutoCloseable {
+
+    static final String KEYSTORE_RESOURCE = "/mock-kms.p12";
+    static final char[] KEYSTORE_PASSWORD = "changeit".toCharArray();
+
+    public static class Request {
+        public final String method;
+        public final String path;
+        // Header names are lower case.
+        public final Map<String, String> headers;
+        public final byte[] body;
+
+        Request(String method, String path, Map<String, String> headers, byte[] body) {
+            this.method = method;
+            this.path = path;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public String getHeader(String name) {
+            return headers.get(name.toLowerCase(Locale.ROOT));
+        }
+
+        public String getBodyAsString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    public static class Response {
+        public final int status;
+        public final String contentType;
+        public final byte[] body;
+
+        public Response(int status, String contentType, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        public static Response json(int status, String contentType, BsonDocument reply) {
+            return new Response(status, contentType, reply.toJson().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public interface Handler {
+        Response handle(Request request) throws Exception;
+    }
+
+    private final SSLServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final SSLContext sslContext;
+    private final LatencyModel latency;
+    private final Handler handler;
+
+    private MockHttpsServer(SSLServerSocket serverSocket, ExecutorService executor, SSLContext sslContext,
+                            LatencyModel latency, Handler handler) {
+        this.serverSocket = serverSocket;
+        this.executor = executor;
+        this.sslContext = sslContext;
+        this.latency = latency;
+        this.handler = handler;
+    }
+
+    // start listens on an ephemeral port on 127.0.0.1. name is used for thread names.
+    public static MockHttpsServer start(String name, LatencyModel latency, Handler handler) throws IOException {
+        var sslContext = createSslContext();
+        var serverSocket = (SSLServerSocket) sslContext.getServerSocketFactory()
+                .createServerSocket(0, 1024, InetAddress.getByName("127.0.0.1"));
+        // Handle connections on many threads so concurrent clients are not serialized by the mock.
+        var executor = Executors.newCachedThreadPool(runnable -> {
+            var thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        var server = new MockHttpsServer(serverSocket, executor, sslContext, latency, handler);
+        executor.execute(server::acceptLoop);
+        return server;
+    }
+
+    // getEndpoint returns "host:port".
+    // libmongocrypt requires a dot in the host, so the IP address is used instead of "localhost".
+    public String getEndpoint() {
+        return "127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    // getSslContext returns an SSLContext that trusts the mock server certificate.
+    // Pass it to ClientEncryptionSettings.Builder.kmsProviderSslContextMap.
+    public SSLContext getSslContext() {
+        return sslContext;
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Ignore. The server is shutting down.
+        }
+        executor.shutdownNow();
+    }
+
+    private static SSLContext createSslContext() throws IOException {
+        try (InputStream in = MockHttpsServer.class.getResourceAsStream(KEYSTORE_RESOURCE)) {
+            if (null == in) {
+                throw new IOException("Error: resource not found: " + KEYSTORE_RESOURCE);
+            }
+            var keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(in, KEYSTORE_PASSWORD);
+            var kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            kmf.init(keyStore, KEYSTORE_PASSWORD);
+            // The self-signed certificate is its own trust anchor.
+            var tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmf.init(keyStore);
+            var sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+            return sslContext;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Error: unable to load mock KMS certificate", e);
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                var socket = serverSocket.accept();
+                executor.execute(() -> serve(socket));
+            } catch (SocketException e) {
+                // The server socket was closed.
+                return;
+            } catch (IOException e) {
+                System.err.println("Mock KMS server failed to accept connection: " + e);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            var in = new BufferedInputStream(socket.getInputStream());
+            var requestLine = readLine(in).split(" ");
+            if (requestLine.length < 2) {
+                throw new IOException("Error: malformed request line");
+            }
+            var headers = new HashMap<String, String>();
+            for (var line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+                var colon = line.indexOf(':');
+                if (colon > 0) {
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+                }
+            }
+            var contentLength = Integer.parseInt(headers.getOrDefault("content-length", "0"));
+            var body = in.readNBytes(contentLength);
+            if (body.length != contentLength) {
+                throw new EOFException("Error: connection closed before end of request body");
+            }
+
+            // Delay before handling so the delay is included in the client's view of the request.
+            latency.delay();
+
+            Response response;
+            try {
+                response = handler.handle(new Request(requestLine[0], requestLine[1], headers, body));
+            } catch (Exception e) {
+                response = new Response(500, "text/plain", String.valueOf(e).getBytes(StandardCharsets.UTF_8));
+            }
+            write(socket.getOutputStream(), response);
+        } catch (IOException e) {
+            if (!serverSocket.isClosed()) {
+                System.err.println("Mock KMS server failed to serve request: " + e);
+            }
+        } catch (InterruptedException e) {
+            // The server is shutting down.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        var line = new ByteArrayOutputStream();
+        for (var b = in.read(); b != '\n'; b = in.read()) {
+            if (b == -1) {
+                throw new EOFException("Error: connection closed before end of request headers");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+
+    private static void write(OutputStream out, Response response) throws IOException {
+        var head = "HTTP/1.1 " + response.status + " " + (response.status == 200 ? "OK" : "Error") + "\r\n"
+                + "Content-Type: " + response.contentType + "\r\n"
+                + "Content-Length: " + response.body.length + "\r\n"
+                + "Connection: close\r\n"
+                + "\r\n";
+        out.write(head.getBytes(StandardCharsets.US_ASCII));
+        out.write(response.body);
+        out.flush();
+    }
+}
@@ -0,0 +1,213 @@
+// PayloadSweep measures ClientEncryption.encrypt throughput by BSON type and payload size, with a cached DEK.
+// For each type and size, encrypt runs repeatedly on the calling thread for a fixed time after a warm-up. The report has:
+// - ops/s and MiB/s of payload encrypted. The payload size is the encoded size of the BSON value.
+// - Java heap allocation rate and bytes allocated per operation, from the thread allocation counter. Native allocations by
+//   libmongocrypt are not included.
+// Compare rows to find the payload size where crypto cost overtakes the fixed per-call cost.
+// Payloads:
+// - string: a string of ASCII characters.
+// - binary: random bytes (subtype 0).
+// - document: a document of 64 character string fields.
+// - array: an array of 64 character strings.
+// Deterministic encryption does not support documents or arrays. Those rows are skipped for Deterministic algorithms.
+// Options for MODE=sweep. The load variables of RequestLoop do not apply:
+// - SWEEP_SIZES to a comma separated list of payload sizes. Units are B, KiB and MiB. Defaults to DEFAULT_SIZES.
+// - SWEEP_ALGORITHM to the encryption algorithm. Defaults to "AEAD_AES_256_CBC_HMAC_SHA_512-Random", which supports
+//   documents and arrays.
+// - SWEEP_WARMUP and SWEEP_DURATION to the warm-up and measurement time per row. Default to 1s and 2s.
+
+package org.mongodb.kmsbench;
+
+import com.mongodb.client.model.vault.EncryptOptions;
+import com.mongodb.client.vault.ClientEncryption;
+import com.mongodb.client.vault.ClientEncryptions;
+import org.bson.BsonArray;
+import org.bson.BsonBinary;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.mongodb.kmsbench.Env.getEnv;
+
+public class PayloadSweep {
+
+    public static final String[] TYPES = {"string", "binary", "document", "array"};
+    public static final String DEFAULT_SIZES = "16B,256B,2KiB,64KiB,1MiB,16MiB";
+    static final int ELEMENT_LENGTH = 64;
+    static final double BYTES_PER_MIB = 1024 * 1024;
+
+    private final ClientEncryption clientEncryption;
+    private final EncryptOptions encryptOptions;
+    private final long warmupNs;
+    private final long measureNs;
+    private final com.sun.management.ThreadMXBean threadMXBean;
+
+    public PayloadSweep(ClientEncryption clientEncryption, EncryptOptions encryptOptions, long warmupNs, long measureNs) {
+        this.clientEncryption = clientEncryption;
+        this.encryptOptions = encryptOptions;
+        this.warmupNs = warmupNs;
+        this.measureNs = measureNs;
+        // HotSpot's ThreadMXBean counts allocated bytes per thread.
+        this.threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+
+    // runMode runs MODE=sweep. The DEK is decrypted on the first encrypt and cached, so the sweep measures encryption rather
+    // than KMS.
+    static void runMode(BenchmarkContext context) {
+        try (var encryptor = ClientEncryptions.create(context.ceSettings)) {
+            var sweepOptions = new EncryptOptions(getEnv("SWEEP_ALGORITHM", "AEAD_AES_256_CBC_HMAC_SHA_512-Random")).keyId(context.dataKey);
+            new PayloadSweep(encryptor, sweepOptions,
+                    LatencyModel.parseDurationNs(getEnv("SWEEP_WARMUP", "1s")),
+                    LatencyModel.parseDurationNs(getEnv("SWEEP_DURATION", "2s")))
+                    .run(getEnv("SWEEP_SIZES", DEFAULT_SIZES), System.out);
+        }
+    }
+
+    // run sweeps all types and sizes, printing a row for each. sizes is a comma separated list like DEFAULT_SIZES.
+    public void run(String sizes, PrintStream out) {
+        var sizeBytes = parseSizes(sizes);
+        var deterministic = encryptOptions.getAlgorithm().endsWith("-Deterministic");
+        out.printf("Algorithm             : %s\n", encryptOptions.getAlgorithm());
+        out.printf("Warm-up               : %.2fs per row\n", warmupNs / 1_000_000_000.0);
+        out.printf("Measurement           : %.2fs per row\n", measureNs / 1_000_000_000.0);
+        out.printf("%-10s %12s %10s %12s %10s %14s %14s\n", "Type", "Size", "Ops", "ops/s", "MiB/s", "Alloc MiB/s", "Alloc B/op");
+        for (var type : TYPES) {
+            if (deterministic && ("document".equals(type) || "array".equals(type))) {
+                out.printf("%-10s (not supported by Deterministic encryption)\n", type);
+                continue;
+            }
+            for (var size : sizeBytes) {
+                var payload = createPayload(type, size);
+                var payloadBytes = encodedSize(payload);
+                Row row;
+                try {
+                    // Warm up, then measure.
+                    measure(payload, warmupNs);
+                    row = measure(payload, measureNs);
+                } catch (RuntimeException e) {
+                    // For example, a payload over the maximum BSON size. Report it and continue with the next size.
+                    out.printf("%-10s %12d error: %s\n", type, payloadBytes, e.getMessage());
+                    continue;
+                }
+                out.printf("%-10s %12d %10d %12.2f %10.2f %14.2f %14d\n", type, payloadBytes, row.ops,
+                        row.ops / row.durationSec,
+                        row.ops * payloadBytes / row.durationSec / BYTES_PER_MIB,
+                        row.allocatedBytes / row.durationSec / BYTES_PER_MIB,
+                        row.allocatedBytes / row.ops);
+            }
+        }
+    }
+
+    static class Row {
+        long ops;
+        double durationSec;
+        long allocatedBytes;
+    }
+
+    // measure encrypts payload repeatedly for at least durationNs and at least once.
+    private Row measure(BsonValue payload, long durationNs) {
+        var row = new Row();
+        var threadId = Thread.currentThread().getId();
+        var allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        var startTimeNs = System.nanoTime();
+        var endTimeNs = startTimeNs;
+        // Check the last result after the loop so the calls are not optimized away.
+        BsonBinary last = null;
+        do {
+            last = clientEncryption.encrypt(payload, encryptOptions);
+            row.ops++;
+            endTimeNs = System.nanoTime();
+        } while (endTimeNs - startTimeNs < durationNs);
+        row.allocatedBytes = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        row.durationSec = (endTimeNs - startTimeNs) / 1_000_000_000.0;
+        if (last.getData().length == 0) {
+            throw new IllegalStateException("Error: encrypt returned an empty ciphertext");
+        }
+        return row;
+    }
+
+    // createPayload returns a value of type with an encoded size of about sizeBytes.
+    public static BsonValue createPayload(String type, int sizeBytes) {
+        switch (type) {
+            case "string":
+                return new BsonString("a".repeat(sizeBytes));
+            case "binary":
+                var bytes = new byte[sizeBytes];
+                // Use a fixed seed so runs encrypt the same data.
+                new Random(0).nextBytes(bytes);
+                return new BsonBinary(bytes);
+            case "document":
+                // Track the encoded size while adding fields: 4 byte length and a trailing 0, then for each field a type
+                // byte, the name and a 0, and the string value.
+                var document = new BsonDocument();
+                var documentBytes = 5;
+                for (var i = 0; i == 0 || documentBytes < sizeBytes; i++) {
+                    var name = "f" + i;
+                    var element = new BsonString(elementValue(sizeBytes));
+                    document.append(name, element);
+                    documentBytes += 1 + name.length() + 1 + encodedSize(element);
+                }
+                return document;
+            case "array":
+                // Arrays are encoded like documents with the index as the field name.
+                var array = new BsonArray();
+                var arrayBytes = 5;
+                for (var i = 0; i == 0 || arrayBytes < sizeBytes; i++) {
+                    var element = new BsonString(elementValue(sizeBytes));
+                    array.add(element);
+                    arrayBytes += 1 + String.valueOf(i).length() + 1 + encodedSize(element);
+                }
+                return array;
+            default:
+                throw new IllegalArgumentException("Error: unrecognized payload type: " + type + ". Expected string, binary, document or array");
+        }
+    }
+
+    private static String elementValue(int sizeBytes) {
+        // Use short elements for payloads smaller than one element.
+        return "a".repeat(Math.min(ELEMENT_LENGTH, Math.max(1, sizeBytes / 2)));
+    }
+
+    // encodedSize returns the number of bytes of value as encoded in BSON, excluding the element name and type.
+    public static int encodedSize(BsonValue value) {
+        switch (value.getBsonType()) {
+            case STRING:
+                // int32 length, UTF-8 bytes and a trailing 0.
+                return 4 + value.asString().getValue().length() + 1;
+            case BINARY:
+                // int32 length, subtype and bytes.
+                return 4 + 1 + value.asBinary().getData().length;
+            default:
+                // Encode in a document {"": value} and subtract the document and element overhead.
+                var wrapper = new RawBsonDocument(new BsonDocument("", value), new BsonDocumentCodec());
+                return wrapper.getByteBuffer().remaining() - (4 + 1 + 1 + 1);
+        }
+    }
+
+    // parseSizes parses a comma separated list of sizes with a unit of B, KiB or MiB. The unit is not case sensitive.
+    public static List<Integer> parseSizes(String sizes) {
+        var result = new ArrayList<Integer>();
+        for (var size : sizes.split(",")) {
+            size = size.trim().toUpperCase(Locale.ROOT);
+            if (size.endsWith("MIB")) {
+                result.add(Integer.parseInt(size.substring(0, size.length() - 3)) * 1024 * 1024);
+            } else if (size.endsWith("KIB")) {
+                result.add(Integer.parseInt(size.substring(0, size.length() - 3)) * 1024);
+            } else if (size.endsWith("B")) {
+                result.add(Integer.parseInt(size.substring(0, size.length() - 1)));
+            } else {
+                throw new IllegalArgumentException("Error: size requires a unit of B, KiB or MiB: " + size);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,131 @@
+// PhaseTimer breaks the time of each iteration down into phases, with one LatencyRecorder per phase:
+// - Create: ClientEncryptions.create.
+// - Key vault checkout: checking out a key vault connection, including opening it. Timed with a ConnectionPoolListener.
+// - Key vault find: the find on the key vault collection. Timed with a CommandListener.
+// - KMS: KMS exchanges, from connect until the response is read. Timed with TimedSSLContext.
+// - Encrypt (other): the rest of the encrypt call. This includes local encryption with the decrypted DEK and selecting a
+//   key vault server.
+// - Close: ClientEncryption.close.
+// Add the listeners to keyVaultMongoClientSettings and wrap each KMS provider's SSLContext with wrapSslContext.
+// The driver runs the key vault find and KMS exchanges on the thread calling encrypt, so each thread accumulates the
+// time of its current iteration in a ThreadLocal.
+
+package org.mongodb.kmsbench;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandSucceededEvent;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolListener;
+
+import javax.net.ssl.SSLContext;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+public class PhaseTimer {
+
+    public static final String[] PHASES = {"Create", "Key vault checkout", "Key vault find", "KMS", "Encrypt (other)", "Close"};
+    static final int CREATE = 0;
+    static final int KEY_VAULT_CHECKOUT = 1;
+    static final int KEY_VAULT_FIND = 2;
+    static final int KMS = 3;
+    static final int ENCRYPT_OTHER = 4;
+    static final int CLOSE = 5;
+
+    static class Current {
+        final long[] phaseNs = new long[PHASES.length];
+        long checkOutStartTimeNs;
+    }
+
+    private final LatencyRecorder[] recorders = new LatencyRecorder[PHASES.length];
+    private final ThreadLocal<Current> current = ThreadLocal.withInitial(Current::new);
+
+    public PhaseTimer() {
+        for (var i = 0; i < recorders.length; i++) {
+            recorders[i] = new LatencyRecorder();
+        }
+    }
+
+    public CommandListener getCommandListener() {
+        return new CommandListener() {
+            @Override
+            public void commandSucceeded(CommandSucceededEvent event) {
+                addFind(event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS));
+            }
+
+            @Override
+            public void commandFailed(CommandFailedEvent event) {
+                addFind(event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS));
+            }
+        };
+    }
+
+    private void addFind(String commandName, long elapsedNs) {
+        if ("find".equals(commandName)) {
+            current.get().phaseNs[KEY_VAULT_FIND] += elapsedNs;
+        }
+    }
+
+    public ConnectionPoolListener getConnectionPoolListener() {
+        return new ConnectionPoolListener() {
+            @Override
+            public void connectionCheckOutStarted(ConnectionCheckOutStartedEvent event) {
+                current.get().checkOutStartTimeNs = System.nanoTime();
+            }
+
+            @Override
+            public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+                addCheckOut();
+            }
+
+            @Override
+            public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+                addCheckOut();
+            }
+        };
+    }
+
+    private void addCheckOut() {
+        var c = current.get();
+        if (c.checkOutStartTimeNs != 0) {
+            c.phaseNs[KEY_VAULT_CHECKOUT] += System.nanoTime() - c.checkOutStartTimeNs;
+            c.checkOutStartTimeNs = 0;
+        }
+    }
+
+    public SSLContext wrapSslContext(SSLContext sslContext) {
+        return new TimedSSLContext(sslContext, exchangeNs -> current.get().phaseNs[KMS] += exchangeNs);
+    }
+
+    // begin resets the phase times of the current thread. Call it before ClientEncryptions.create.
+    public void begin() {
+        var c = current.get();
+        Arrays.fill(c.phaseNs, 0);
+        c.checkOutStartTimeNs = 0;
+    }
+
+    // record records the phases of the current thread's iteration. encryptNs is the time of the encrypt call, which
+    // includes the key vault and KMS phases.
+    public void record(long createNs, long encryptNs, long closeNs) {
+        var phaseNs = current.get().phaseNs;
+        phaseNs[CREATE] = createNs;
+        phaseNs[ENCRYPT_OTHER] = Math.max(0, encryptNs - phaseNs[KEY_VAULT_CHECKOUT] - phaseNs[KEY_VAULT_FIND] - phaseNs[KMS]);
+        phaseNs[CLOSE] = closeNs;
+        for (var i = 0; i < PHASES.length; i++) {
+            recorders[i].recordNs(phaseNs[i]);
+        }
+    }
+
+    // clear discards recorded phases, for example after warm-up. Do not call it while iterations are running.
+    public void clear() {
+        for (var i = 0; i < recorders.length; i++) {
+            recorders[i] = new LatencyRecorder();
+        }
+    }
+
+    public LatencyRecorder getRecorder(int phase) {
+        return recorders[phase];
+    }
+}
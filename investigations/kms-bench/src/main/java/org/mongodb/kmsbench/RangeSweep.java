@@ -0,0 +1,255 @@
+// RangeSweep measures Queryable Encryption range encryption across combinations of RangeOptions and contention factor, with a
+// cached DEK. Range encryption produces edge tokens for each value, so its cost depends on the range options. For each
+// combination the report has:
+// - Encrypt latency (median and p99) of ClientEncryption.encrypt with the "RangePreview" algorithm.
+// - Payload bytes: the mean size of the encrypted insert payload.
+// - Insert latency (median and p99) of inserting the payload into a collection with matching encryptedFields, if an insert
+//   client is given. The server writes the tokens to the ESC and ECOC collections, so insert cost grows with the payload.
+// Combinations with a precision encrypt double values. Combinations without a precision encrypt int32 values. Values cycle
+// through [min, max].
+// Driver 4.10.2 supports the "RangePreview" algorithm and queryType "rangePreview", which require MongoDB 7.0. RangeOptions has
+// min, max, sparsity and precision. trimFactor requires driver 5.2 or later and is not swept.
+// Options for MODE=range are comma separated lists:
+// - RANGE_BOUNDS to min:max pairs. Defaults to DEFAULT_BOUNDS.
+// - RANGE_SPARSITIES. Defaults to DEFAULT_SPARSITIES.
+// - RANGE_PRECISIONS to "none" for int32 values or a number of digits for double values. Defaults to DEFAULT_PRECISIONS.
+// - CONTENTION_FACTORS. Defaults to DEFAULT_CONTENTION_FACTORS.
+// - RANGE_REQUESTS and RANGE_WARMUP to the number of measured and warm-up values per combination. Default to 200 and 20.
+// - RANGE_INSERT to "false" to skip inserts. Inserts require a replica set running MongoDB 7.0.
+// RANGE_TRIM_FACTORS is rejected.
+
+package org.mongodb.kmsbench;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.DropCollectionOptions;
+import com.mongodb.client.model.vault.EncryptOptions;
+import com.mongodb.client.model.vault.RangeOptions;
+import com.mongodb.client.vault.ClientEncryption;
+import com.mongodb.client.vault.ClientEncryptions;
+import org.bson.BsonArray;
+import org.bson.BsonBinary;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonInt64;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mongodb.kmsbench.Env.getEnv;
+
+public class RangeSweep {
+
+    public static final String DEFAULT_BOUNDS = "0:1000,0:1000000";
+    public static final String DEFAULT_SPARSITIES = "1,2,4";
+    public static final String DEFAULT_PRECISIONS = "none";
+    public static final String DEFAULT_CONTENTION_FACTORS = "0,4";
+    static final String COLLECTION = "range_sweep";
+    static final String FIELD = "v";
+
+    public static class Config {
+        final double min;
+        final double max;
+        final long sparsity;
+        // precision is null to encrypt int32 values.
+        final Integer precision;
+        final long contentionFactor;
+
+        public Config(double min, double max, long sparsity, Integer precision, long contentionFactor) {
+            if (min > max) {
+                throw new IllegalArgumentException("Error: expected min <= max, got: " + min + " > " + max);
+            }
+            if (null == precision && (min != (int) min || max != (int) max)) {
+                throw new IllegalArgumentException("Error: expected int32 bounds without a precision, got: " + min + ":" + max);
+            }
+            this.min = min;
+            this.max = max;
+            this.sparsity = sparsity;
+            this.precision = precision;
+            this.contentionFactor = contentionFactor;
+        }
+
+        BsonValue bound(double bound) {
+            return null == precision ? new BsonInt32((int) bound) : new BsonDouble(bound);
+        }
+
+        BsonValue value(int i) {
+            if (null == precision) {
+                return new BsonInt32((int) (min + Math.floorMod((long) i, (long) max - (long) min + 1)));
+            }
+            // Step by a fraction so the values use the precision.
+            return new BsonDouble(max == min ? min : min + (i * 0.37) % (max - min));
+        }
+
+        EncryptOptions createEncryptOptions(BsonBinary dataKey) {
+            var rangeOptions = new RangeOptions().min(bound(min)).max(bound(max)).sparsity(sparsity);
+            if (null != precision) {
+                rangeOptions.precision(precision);
+            }
+            return new EncryptOptions("RangePreview").keyId(dataKey).contentionFactor(contentionFactor).rangeOptions(rangeOptions);
+        }
+
+        // createEncryptedFields returns the encryptedFields for a collection with FIELD range indexed like this configuration.
+        BsonDocument createEncryptedFields(BsonBinary dataKey) {
+            var queries = new BsonDocument("queryType", new BsonString("rangePreview"))
+                    .append("contention", new BsonInt64(contentionFactor))
+                    .append("sparsity", new BsonInt64(sparsity))
+                    .append("min", bound(min))
+                    .append("max", bound(max));
+            if (null != precision) {
+                queries.append("precision", new BsonInt32(precision));
+            }
+            var field = new BsonDocument("keyId", dataKey)
+                    .append("path", new BsonString(FIELD))
+                    .append("bsonType", new BsonString(null == precision ? "int" : "double"))
+                    .append("queries", queries);
+            return new BsonDocument("fields", new BsonArray(List.of(field)));
+        }
+    }
+
+    private final ClientEncryption clientEncryption;
+    private final BsonBinary dataKey;
+    private final MongoClient insertClient;
+    private final int warmupRequests;
+    private final int requests;
+
+    // insertClient is a client with bypassQueryAnalysis enabled, or null to skip measuring inserts.
+    public RangeSweep(ClientEncryption clientEncryption, BsonBinary dataKey, MongoClient insertClient, int warmupRequests, int requests) {
+        this.clientEncryption = clientEncryption;
+        this.dataKey = dataKey;
+        this.insertClient = insertClient;
+        this.warmupRequests = warmupRequests;
+        this.requests = requests;
+    }
+
+    // runMode runs MODE=range.
+    static void runMode(BenchmarkContext context) {
+        if (null != System.getenv("RANGE_TRIM_FACTORS")) {
+            throw new IllegalArgumentException("Error: RANGE_TRIM_FACTORS requires driver 5.2 or later, which adds RangeOptions.trimFactor");
+        }
+        var configs = createConfigs(getEnv("RANGE_BOUNDS", DEFAULT_BOUNDS),
+                getEnv("RANGE_SPARSITIES", DEFAULT_SPARSITIES),
+                getEnv("RANGE_PRECISIONS", DEFAULT_PRECISIONS),
+                getEnv("CONTENTION_FACTORS", DEFAULT_CONTENTION_FACTORS));
+        // Insert explicitly encrypted payloads through a client that bypasses query analysis, so mongocryptd is not needed.
+        var insertClient = Boolean.parseBoolean(getEnv("RANGE_INSERT", "true"))
+                ? MongoClients.create(MongoClientSettings.builder()
+                        .applyConnectionString(KmsBenchmark.CONNECTION_STRING)
+                        .autoEncryptionSettings(KmsBenchmark.autoEncryptionSettingsBuilder(context.ceSettings)
+                                .bypassQueryAnalysis(true)
+                                .build())
+                        .build())
+                : null;
+        try (var encryptor = ClientEncryptions.create(context.ceSettings)) {
+            new RangeSweep(encryptor, context.dataKey, insertClient,
+                    Integer.parseInt(getEnv("RANGE_WARMUP", "20")),
+                    Integer.parseInt(getEnv("RANGE_REQUESTS", "200")))
+                    .run(configs, System.out);
+        } finally {
+            if (null != insertClient) {
+                insertClient.close();
+            }
+        }
+    }
+
+    // run measures each configuration in configs, printing a row for each.
+    public void run(List<Config> configs, PrintStream out) {
+        out.printf("Combinations          : %d\n", configs.size());
+        out.printf("Requests              : %d per combination after %d warm-up\n", requests, warmupRequests);
+        out.printf("Insert                : %s\n", null != insertClient ? KmsBenchmark.DATABASE + "." + COLLECTION : "skipped");
+        out.printf("%-12s %12s %6s %6s %6s %12s %12s %12s %12s %12s\n", "Min", "Max", "Spars", "Prec", "Cont",
+                "Enc med us", "Enc p99 us", "Payload B", "Ins med us", "Ins p99 us");
+        for (var config : configs) {
+            var encryptRecorder = new LatencyRecorder();
+            var insertRecorder = new LatencyRecorder();
+            var payloadBytes = 0L;
+            var label = String.format("%-12s %12s %6d %6s %6d", format(config.min), format(config.max), config.sparsity,
+                    null == config.precision ? "-" : config.precision, config.contentionFactor);
+            try {
+                var options = config.createEncryptOptions(dataKey);
+                var collection = null != insertClient ? createCollection(config) : null;
+                try {
+                    for (var i = 0; i < warmupRequests; i++) {
+                        var encrypted = clientEncryption.encrypt(config.value(i), options);
+                        if (null != collection) {
+                            collection.insertOne(new BsonDocument(FIELD, encrypted));
+                        }
+                    }
+                    for (var i = 0; i < requests; i++) {
+                        var value = config.value(i);
+                        var startTimeNs = System.nanoTime();
+                        var encrypted = clientEncryption.encrypt(value, options);
+                        encryptRecorder.recordNs(System.nanoTime() - startTimeNs);
+                        payloadBytes += encrypted.getData().length;
+                        if (null != collection) {
+                            var document = new BsonDocument(FIELD, encrypted);
+                            startTimeNs = System.nanoTime();
+                            collection.insertOne(document);
+                            insertRecorder.recordNs(System.nanoTime() - startTimeNs);
+                        }
+                    }
+                } finally {
+                    if (null != collection) {
+                        collection.drop(new DropCollectionOptions().encryptedFields(config.createEncryptedFields(dataKey)));
+                    }
+                }
+            } catch (RuntimeException e) {
+                // For example, options rejected by libmongocrypt or a server that does not support rangePreview.
+                out.printf("%s error: %s\n", label, e.getMessage());
+                continue;
+            }
+            out.printf("%s %12d %12d %12.1f %12s %12s\n", label,
+                    encryptRecorder.getValueAtPercentileMicros(50),
+                    encryptRecorder.getValueAtPercentileMicros(99),
+                    payloadBytes / (double) Math.max(1, encryptRecorder.getCount()),
+                    null != insertClient ? String.valueOf(insertRecorder.getValueAtPercentileMicros(50)) : "-",
+                    null != insertClient ? String.valueOf(insertRecorder.getValueAtPercentileMicros(99)) : "-");
+        }
+    }
+
+    // createCollection recreates the collection with encryptedFields for config. Creating the collection also creates the
+    // ESC and ECOC collections.
+    private MongoCollection<BsonDocument> createCollection(Config config) {
+        var database = insertClient.getDatabase(KmsBenchmark.DATABASE);
+        var encryptedFields = config.createEncryptedFields(dataKey);
+        database.getCollection(COLLECTION).drop(new DropCollectionOptions().encryptedFields(encryptedFields));
+        database.createCollection(COLLECTION, new CreateCollectionOptions().encryptedFields(encryptedFields));
+        return database.getCollection(COLLECTION, BsonDocument.class);
+    }
+
+    private static String format(double bound) {
+        return bound == Math.rint(bound) ? String.valueOf((long) bound) : String.valueOf(bound);
+    }
+
+    // createConfigs returns every combination of the comma separated lists. bounds is a list of min:max pairs. precisions
+    // contains "none" to encrypt int32 values, or a number of digits to encrypt double values.
+    public static List<Config> createConfigs(String bounds, String sparsities, String precisions, String contentionFactors) {
+        var configs = new ArrayList<Config>();
+        for (var bound : bounds.split(",")) {
+            var parts = bound.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Error: expected bounds like min:max, got: " + bound);
+            }
+            var min = Double.parseDouble(parts[0]);
+            var max = Double.parseDouble(parts[1]);
+            for (var sparsity : sparsities.split(",")) {
+                for (var precision : precisions.split(",")) {
+                    precision = precision.trim();
+                    for (var contentionFactor : contentionFactors.split(",")) {
+                        configs.add(new Config(min, max, Long.parseLong(sparsity.trim()),
+                                "none".equals(precision) ? null : Integer.valueOf(precision),
+                                Long.parseLong(contentionFactor.trim())));
+                    }
+                }
+            }
+        }
+        return configs;
+    }
+}
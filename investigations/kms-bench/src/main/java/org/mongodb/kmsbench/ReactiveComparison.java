@@ -0,0 +1,233 @@
+// ReactiveComparison runs the same KMS workload on the sync driver and on the reactive streams driver, and compares the
+// threads and memory each needs for the same throughput.
+// - sync: a fixed pool of platform threads, each blocked in ClientEncryption.encrypt while its key vault find and KMS
+//   request are in flight. Concurrency is the number of workers.
+// - reactive: the reactive streams ClientEncryption. A semaphore bounds the number of encrypt operations in flight. The
+//   driver sends the key vault find and KMS request asynchronously, so no thread blocks per operation.
+// Each operation encrypts with a different DEK from dataKeys, so each needs a key vault find and a KMS decrypt. Each variant
+// uses one new ClientEncryption, so no DEK is cached when it starts. Use at least as many DEKs as operations.
+// The report has, for each variant:
+// - Throughput and latency of the operations.
+// - Peak threads: the most live threads in the JVM during the run, minus the threads before it. This includes workers and
+//   threads started by the driver. Throughput per thread divides throughput by peak threads.
+// - CPU time per operation, from the process CPU time.
+// - Heap per in-flight operation: heap used after a GC when half of the operations are done, minus heap used after a GC
+//   before the run, divided by the operations in flight at that time. This is approximate. Set MOCK_KMS_LATENCY so that
+//   operations stay in flight. Platform thread stacks are outside the heap and not included. The sampling GC pause is included
+//   in the latency of the operations in flight at the time.
+// MODE=reactive runs TOTAL_REQUESTS operations, and creates TOTAL_REQUESTS DEKs first. Options:
+// - SYNC_WORKERS to the number of platform threads for the sync driver. Defaults to 100.
+// - REACTIVE_IN_FLIGHT to the maximum number of encrypts in flight on the reactive driver. Defaults to 1000.
+
+package org.mongodb.kmsbench;
+
+import com.mongodb.ClientEncryptionSettings;
+import com.mongodb.client.model.vault.EncryptOptions;
+import org.bson.BsonBinary;
+import org.bson.BsonString;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mongodb.kmsbench.Env.getEnv;
+
+public class ReactiveComparison {
+
+    private final ClientEncryptionSettings ceSettings;
+    private final List<BsonBinary> dataKeys;
+    private final com.sun.management.OperatingSystemMXBean operatingSystemMXBean;
+
+    public ReactiveComparison(ClientEncryptionSettings ceSettings, List<BsonBinary> dataKeys) {
+        this.ceSettings = ceSettings;
+        this.dataKeys = dataKeys;
+        // HotSpot's OperatingSystemMXBean reports the process CPU time.
+        this.operatingSystemMXBean = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    }
+
+    // runMode runs MODE=reactive.
+    static void runMode(BenchmarkContext context) throws Exception {
+        var totalRequests = Integer.parseInt(getEnv("TOTAL_REQUESTS", "1000"));
+        new ReactiveComparison(context.ceSettings, context.createDataKeys(totalRequests))
+                .run(totalRequests,
+                        Integer.parseInt(getEnv("SYNC_WORKERS", "100")),
+                        Integer.parseInt(getEnv("REACTIVE_IN_FLIGHT", "1000")),
+                        System.out);
+    }
+
+    static class Row {
+        String variant;
+        int concurrency;
+        double durationSec;
+        LatencyRecorder recorder;
+        int peakThreads;
+        long cpuNs;
+        // heapPerInFlight is -1 if no operations were in flight when sampled.
+        long heapPerInFlight = -1;
+    }
+
+    // run runs requests operations with syncWorkers workers on the sync driver, then with up to reactiveInFlight operations in
+    // flight on the reactive streams driver.
+    public void run(int requests, int syncWorkers, int reactiveInFlight, PrintStream out) throws Exception {
+        if (requests > dataKeys.size()) {
+            throw new IllegalArgumentException("Error: expected at most " + dataKeys.size() + " requests, one per DEK, got: " + requests);
+        }
+        out.printf("Requests              : %d, one DEK each\n", requests);
+        var rows = List.of(runSync(requests, syncWorkers), runReactive(requests, reactiveInFlight));
+        out.printf("%-10s %12s %12s %12s %12s %10s %12s %12s %14s\n", "Variant", "Concurrency", "ops/s", "Median ms", "p99 ms",
+                "Threads", "ops/s/thread", "CPU us/op", "Heap B/op");
+        for (var row : rows) {
+            var opsPerSecond = row.recorder.getCount() / row.durationSec;
+            out.printf("%-10s %12d %12.2f %12.3f %12.3f %10d %12.2f %12.1f %14s\n", row.variant, row.concurrency,
+                    opsPerSecond,
+                    row.recorder.getValueAtPercentileMicros(50) / 1_000.0,
+                    row.recorder.getValueAtPercentileMicros(99) / 1_000.0,
+                    row.peakThreads,
+                    opsPerSecond / Math.max(1, row.peakThreads),
+                    row.cpuNs / 1_000.0 / Math.max(1, row.recorder.getCount()),
+                    row.heapPerInFlight >= 0 ? String.valueOf(row.heapPerInFlight) : "-");
+        }
+    }
+
+    private Row runSync(int requests, int workers) throws Exception {
+        var row = new Row();
+        row.variant = "sync";
+        row.concurrency = workers;
+        // Start measuring before creating the ClientEncryption, so the threads it starts are counted.
+        var measurement = new Measurement();
+        try (var encryptor = com.mongodb.client.vault.ClientEncryptions.create(ceSettings)) {
+            var sampler = new InFlightSampler(requests);
+            var started = new AtomicInteger();
+            var result = LoadRunner.run(requests, workers, "platform", () -> {
+                var dataKey = dataKeys.get(started.getAndIncrement());
+                encryptor.encrypt(new BsonString("foo"), new EncryptOptions(KmsBenchmark.ENCRYPTION_ALGORITHM).keyId(dataKey));
+                sampler.completed(started.get());
+            });
+            measurement.end(row);
+            row.durationSec = result.durationSec;
+            row.recorder = result.recorder;
+            row.heapPerInFlight = sampler.getHeapPerInFlight();
+        }
+        return row;
+    }
+
+    private Row runReactive(int requests, int inFlight) throws Exception {
+        var row = new Row();
+        row.variant = "reactive";
+        row.concurrency = inFlight;
+        var measurement = new Measurement();
+        try (var encryptor = com.mongodb.reactivestreams.client.vault.ClientEncryptions.create(ceSettings)) {
+            var sampler = new InFlightSampler(requests);
+            var permits = new Semaphore(inFlight);
+            var done = new CountDownLatch(requests);
+            var started = new AtomicInteger();
+            var error = new AtomicReference<Throwable>();
+            var recorder = new LatencyRecorder();
+            var startTimeNs = System.nanoTime();
+            for (var i = 0; i < requests && null == error.get(); i++) {
+                permits.acquire();
+                var dataKey = dataKeys.get(i);
+                started.incrementAndGet();
+                var operationStartTimeNs = System.nanoTime();
+                encryptor.encrypt(new BsonString("foo"), new EncryptOptions(KmsBenchmark.ENCRYPTION_ALGORITHM).keyId(dataKey))
+                        .subscribe(new Subscriber<>() {
+                            @Override
+                            public void onSubscribe(Subscription subscription) {
+                                subscription.request(1);
+                            }
+
+                            @Override
+                            public void onNext(BsonBinary encrypted) {
+                            }
+
+                            @Override
+                            public void onError(Throwable throwable) {
+                                error.compareAndSet(null, throwable);
+                                finish();
+                            }
+
+                            @Override
+                            public void onComplete() {
+                                recorder.recordNs(System.nanoTime() - operationStartTimeNs);
+                                finish();
+                            }
+
+                            private void finish() {
+                                sampler.completed(started.get());
+                                permits.release();
+                                done.countDown();
+                            }
+                        });
+            }
+            if (null == error.get()) {
+                done.await();
+            }
+            if (null != error.get()) {
+                throw new IllegalStateException("Error: reactive encrypt failed", error.get());
+            }
+            row.durationSec = (System.nanoTime() - startTimeNs) / 1_000_000_000.0;
+            measurement.end(row);
+            row.recorder = recorder;
+            row.heapPerInFlight = sampler.getHeapPerInFlight();
+        }
+        return row;
+    }
+
+    // Measurement records the process CPU time and peak thread count from its creation.
+    private class Measurement {
+        private final int threadsBefore;
+        private final long cpuNsBefore;
+
+        Measurement() {
+            var threadMXBean = ManagementFactory.getThreadMXBean();
+            threadsBefore = threadMXBean.getThreadCount();
+            threadMXBean.resetPeakThreadCount();
+            cpuNsBefore = operatingSystemMXBean.getProcessCpuTime();
+        }
+
+        void end(Row row) {
+            row.cpuNs = operatingSystemMXBean.getProcessCpuTime() - cpuNsBefore;
+            row.peakThreads = ManagementFactory.getThreadMXBean().getPeakThreadCount() - threadsBefore;
+        }
+    }
+
+    // InFlightSampler samples heap used when half of the operations are complete.
+    static class InFlightSampler {
+        private final int halfway;
+        private final long baselineHeap;
+        private final AtomicInteger completed = new AtomicInteger();
+        private final AtomicLong heapPerInFlight = new AtomicLong(-1);
+
+        InFlightSampler(int requests) {
+            halfway = Math.max(1, requests / 2);
+            baselineHeap = heapUsedAfterGc();
+        }
+
+        // completed is called when an operation completes, with the number of operations started so far.
+        void completed(int started) {
+            var count = completed.incrementAndGet();
+            if (count == halfway) {
+                var inFlight = started - count;
+                if (inFlight > 0) {
+                    heapPerInFlight.set(Math.max(0, heapUsedAfterGc() - baselineHeap) / inFlight);
+                }
+            }
+        }
+
+        long getHeapPerInFlight() {
+            return heapPerInFlight.get();
+        }
+
+        private static long heapUsedAfterGc() {
+            System.gc();
+            return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+// RefreshingCredentialSupplier supplies KMS provider credentials on demand through kmsProviderPropertySuppliers, so
+// credentials can rotate without rebuilding ClientEncryptionSettings. Use configure to set up ClientEncryptionSettings.
+// Credentials come from a Source and are cached until they expire. Refresh happens in the background:
+// - The first call, or a call after the credentials have expired, fetches on the calling thread. This is a blocking fetch.
+// - A call within refreshAheadNs of expiry returns the cached credentials and starts a refresh on a background thread, if one
+//   is not already running. Encryption does not wait for it.
+// - If a background refresh fails, the cached credentials are kept and the next call starts another refresh.
+// A background refresh and a blocking fetch may finish in either order. Credentials are published with compare-and-set, and
+// the entry that expires later wins, so a slow fetch does not replace newer credentials.
+// Set refreshAheadNs above the source's fetch time, so refreshes finish before expiry and no call blocks after the first.
+
+package org.mongodb.kmsbench;
+
+import com.mongodb.ClientEncryptionSettings;
+
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+public class RefreshingCredentialSupplier implements Supplier<Map<String, Object>>, AutoCloseable {
+
+    public interface Source {
+        Credentials fetch() throws Exception;
+    }
+
+    public static class Credentials {
+        final Map<String, Object> values;
+        final long ttlNs;
+
+        // values are the KMS provider options, valid for ttlNs from the start of the fetch.
+        public Credentials(Map<String, Object> values, long ttlNs) {
+            this.values = values;
+            this.ttlNs = ttlNs;
+        }
+    }
+
+    private static class Entry {
+        final Map<String, Object> values;
+        final long expiresAtNs;
+
+        Entry(Map<String, Object> values, long expiresAtNs) {
+            this.values = values;
+            this.expiresAtNs = expiresAtNs;
+        }
+    }
+
+    private final Source source;
+    private final long refreshAheadNs;
+    private final ExecutorService refresher;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final AtomicLong blockingFetches = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+    private final LatencyRecorder fetchRecorder = new LatencyRecorder();
+    private final AtomicReference<Entry> current = new AtomicReference<>();
+
+    public RefreshingCredentialSupplier(Source source, long refreshAheadNs) {
+        this.source = source;
+        this.refreshAheadNs = refreshAheadNs;
+        this.refresher = Executors.newSingleThreadExecutor(runnable -> {
+            var thread = new Thread(runnable, "credential-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // configure returns settings like ceSettings that get the options of providerName from supplier.
+    public static ClientEncryptionSettings configure(ClientEncryptionSettings ceSettings, String providerName, Supplier<Map<String, Object>> supplier) {
+        // An empty map tells the driver to call the supplier for the provider's options.
+        var builder = ClientEncryptionSettings.builder()
+                .keyVaultMongoClientSettings(ceSettings.getKeyVaultMongoClientSettings())
+                .keyVaultNamespace(ceSettings.getKeyVaultNamespace())
+                .kmsProviders(Map.of(providerName, Map.of()))
+                .kmsProviderPropertySuppliers(Map.of(providerName, supplier));
+        if (null != ceSettings.getKmsProviderSslContextMap()) {
+            builder.kmsProviderSslContextMap(ceSettings.getKmsProviderSslContextMap());
+        }
+        return builder.build();
+    }
+
+    @Override
+    public Map<String, Object> get() {
+        var entry = current.get();
+        var now = System.nanoTime();
+        if (null == entry || now >= entry.expiresAtNs) {
+            entry = fetchBlocking();
+        } else if (entry.expiresAtNs - now <= refreshAheadNs && refreshing.compareAndSet(false, true)) {
+            refresher.execute(this::refresh);
+        }
+        return entry.values;
+    }
+
+    // fetchBlocking is synchronized so callers that find the credentials expired at the same time fetch once.
+    private synchronized Entry fetchBlocking() {
+        // Another caller, or a background refresh, may have fetched while this one waited.
+        var entry = current.get();
+        if (null != entry && System.nanoTime() < entry.expiresAtNs) {
+            return entry;
+        }
+        blockingFetches.incrementAndGet();
+        return publish(fetch());
+    }
+
+    private void refresh() {
+        try {
+            publish(fetch());
+            refreshes.incrementAndGet();
+        } catch (RuntimeException e) {
+            refreshFailures.incrementAndGet();
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    // publish sets current to fetched unless current expires later, and returns the entry in current.
+    private Entry publish(Entry fetched) {
+        return current.accumulateAndGet(fetched, (entry, update) ->
+                null == entry || update.expiresAtNs - entry.expiresAtNs > 0 ? update : entry);
+    }
+
+    private Entry fetch() {
+        var startTimeNs = System.nanoTime();
+        try {
+            var credentials = source.fetch();
+            return new Entry(credentials.values, startTimeNs + credentials.ttlNs);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Error: interrupted while fetching KMS credentials", e);
+        } catch (Exception e) {
+            throw new IllegalStateException("Error: failed to fetch KMS credentials", e);
+        } finally {
+            fetchRecorder.recordNs(System.nanoTime() - startTimeNs);
+        }
+    }
+
+    // getBlockingFetches returns the number of fetches on a calling thread.
+    public long getBlockingFetches() {
+        return blockingFetches.get();
+    }
+
+    // getRefreshes returns the number of successful background refreshes.
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    public long getRefreshFailures() {
+        return refreshFailures.get();
+    }
+
+    // getFetchRecorder returns the times of all fetches, blocking and background.
+    public LatencyRecorder getFetchRecorder() {
+        var recorder = new LatencyRecorder();
+        recorder.add(fetchRecorder);
+        return recorder;
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+}
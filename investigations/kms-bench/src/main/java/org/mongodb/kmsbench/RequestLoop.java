@@ -0,0 +1,358 @@
+// RequestLoop runs MODE=create, pool and shared: it repeatedly encrypts with the DEK and prints request time statistics.
+// - create: use a new ClientEncryption for each request. The new ClientEncryption does not have a cached DEK, so each
+//   request sends a KMS request.
+// - pool: reuse a pool of long-lived ClientEncryption instances. The first (cold) and later (warm) use of each instance are
+//   reported separately.
+// - shared: create a short-lived encryptor for each request like create, but through SharedClientEncryptions, so encryptors
+//   share decrypted DEKs. Compare the KMS requests per request with MODE=create. Shared instances are keyed by settings, and
+//   every request uses the same settings, so there is one shared instance at a time.
+// Optional environment variables to control the load. Other modes that run a workload on LoadRunner use them too:
+// - TOTAL_REQUESTS to the number of iterations. Defaults to 1000.
+// - WORKERS to the number of concurrent workers. Defaults to 1.
+// - WORKER_THREADS to "platform" for a fixed thread pool or "virtual" for virtual threads (Java 21+). Defaults to "platform".
+// - WARMUP_REQUESTS to a number of iterations to run before the measured requests. Defaults to 0. Warm-up first reads the DEK
+//   document from the key vault, then runs the iterations with the same MODE and WORKERS. Warm-up iterations are not included
+//   in the request, pool or shared statistics and are reported separately. Pool instances used in warm-up stay warm.
+// - TARGET_RATE to a number of requests per second to issue requests at a fixed rate (open loop) instead of issuing each
+//   request when a worker finishes the previous one. Latency is measured from each request's intended start time, so
+//   requests delayed behind a stall are counted. Use enough WORKERS, or virtual threads, to sustain the rate.
+// Other options:
+// - POOL_SIZE to the number of ClientEncryption instances in pool mode. Defaults to WORKERS.
+// - SHARED_TTL_MS to the time a shared ClientEncryption is reused in shared mode. Defaults to 60000.
+// - PHASE_TIMING to "true" to time the phases of each request in MODE=create: ClientEncryptions.create, key vault connection
+//   checkout, key vault find, KMS exchanges, the rest of encrypt, and close. A histogram is printed for each phase.
+// - MAX_KMS_REQUESTS_PER_REQUEST to fail the run when the mock KMS requests per measured request exceed a threshold, after
+//   printing the statistics. See KmsRequestThresholds for the syntax. Requires USE_MOCK_KMS=true.
+//   Example: MAX_KMS_REQUESTS_PER_REQUEST=Decrypt=1
+// - HGRM_FILE to a path to write the request time percentile distribution in the HdrHistogram .hgrm format, in milliseconds.
+// With AZURE_TOKEN_CACHE or CREDENTIAL_SUPPLIER, their statistics are printed too.
+
+package org.mongodb.kmsbench;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.model.vault.EncryptOptions;
+import com.mongodb.client.vault.ClientEncryptions;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Map;
+
+import static org.mongodb.kmsbench.Env.getEnv;
+import static org.mongodb.kmsbench.KmsBenchmark.CONNECTION_STRING;
+import static org.mongodb.kmsbench.KmsBenchmark.ENCRYPTION_ALGORITHM;
+import static org.mongodb.kmsbench.KmsBenchmark.VAULT_NAMESPACE;
+
+public class RequestLoop {
+
+    // run runs the loop for mode: "create", "pool" or "shared".
+    static void run(BenchmarkContext context, String mode) throws Exception {
+        var provider = context.provider;
+        var ceSettings = context.ceSettings;
+        var dataKey = context.dataKey;
+        var phaseTimer = context.phaseTimer;
+        var kmsRequestThresholds = KmsRequestThresholds.parse(getEnv("MAX_KMS_REQUESTS_PER_REQUEST", ""));
+        if (!kmsRequestThresholds.isEmpty() && provider.getRequestCounts().isEmpty()) {
+            throw new IllegalArgumentException("Error: MAX_KMS_REQUESTS_PER_REQUEST requires KMS request counts, which only the mock KMS servers provide. Set USE_MOCK_KMS=true");
+        }
+
+        // Repeatedly use the DEK. This is expected to result in one KMS request per iteration. Check it with
+        // MAX_KMS_REQUESTS_PER_REQUEST.
+        var totalRequests = Integer.parseInt(getEnv("TOTAL_REQUESTS", "1000"));
+        var workers = Integer.parseInt(getEnv("WORKERS", "1"));
+        var workerThreads = getEnv("WORKER_THREADS", "platform");
+        var targetRate = Double.parseDouble(getEnv("TARGET_RATE", "0"));
+        if (null != phaseTimer && !"create".equals(mode)) {
+            throw new IllegalArgumentException("Error: PHASE_TIMING requires MODE=create, got: " + mode);
+        }
+        var pool = "pool".equals(mode)
+                ? new ClientEncryptionPool(ceSettings, Integer.parseInt(getEnv("POOL_SIZE", String.valueOf(workers))))
+                : null;
+        var sharedEncryptions = "shared".equals(mode)
+                ? new SharedClientEncryptions(Long.parseLong(getEnv("SHARED_TTL_MS", "60000")), 1)
+                : null;
+        LoadRunner.Iteration iteration;
+        switch (mode) {
+            case "create":
+                if (null != phaseTimer) {
+                    iteration = () -> {
+                        phaseTimer.begin();
+                        var startTimeNs = System.nanoTime();
+                        var encryptor = ClientEncryptions.create(ceSettings);
+                        var createdTimeNs = System.nanoTime();
+                        try {
+                            encryptor.encrypt(new BsonString("foo"),
+                                    new EncryptOptions(ENCRYPTION_ALGORITHM).keyId(dataKey));
+                        } finally {
+                            var encryptedTimeNs = System.nanoTime();
+                            encryptor.close();
+                            phaseTimer.record(createdTimeNs - startTimeNs, encryptedTimeNs - createdTimeNs, System.nanoTime() - encryptedTimeNs);
+                        }
+                    };
+                    break;
+                }
+                iteration = () -> {
+                    // Use a new ClientEncryption on each iteration. The new ClientEncryption does not have a cached DEK and will send a new KMS request.
+                    try (var encryptor = ClientEncryptions.create(ceSettings)) {
+                        encryptor.encrypt(new BsonString("foo"),
+                                new EncryptOptions(ENCRYPTION_ALGORITHM).keyId(dataKey));
+                    }
+                };
+                break;
+            case "pool":
+                // Reuse ClientEncryption instances. Only the first use of each instance is expected to send a KMS request.
+                iteration = () -> pool.encrypt(new BsonString("foo"),
+                        new EncryptOptions(ENCRYPTION_ALGORITHM).keyId(dataKey));
+                break;
+            case "shared":
+                // Create a short-lived encryptor on each iteration. Encryptors share a ClientEncryption, so the DEK is decrypted
+                // once per shared instance rather than once per iteration.
+                iteration = () -> {
+                    try (var encryptor = sharedEncryptions.create(ceSettings)) {
+                        encryptor.encrypt(new BsonString("foo"),
+                                new EncryptOptions(ENCRYPTION_ALGORITHM).keyId(dataKey));
+                    }
+                };
+                break;
+            default:
+                throw new IllegalArgumentException("Error: unrecognized request loop mode: " + mode + ". Expected create, pool or shared");
+        }
+        // Warm up so the measured requests are not skewed by one-time costs: key vault connection setup, the first find on the
+        // key vault, TLS to KMS and JIT compilation. Warm-up runs as a closed loop even if TARGET_RATE is set.
+        var warmupRequests = Integer.parseInt(getEnv("WARMUP_REQUESTS", "0"));
+        LoadRunner.Result warmupResult = null;
+        var prefetchTimeNs = 0L;
+        var prefetchedKeys = 0;
+        Map<String, Long> warmupKmsRequests = Map.of();
+        Map<String, Long> kmsRequestsBefore;
+        LoadRunner.Result result;
+        // Close the pool or the shared instances even if an iteration fails, so their ClientEncryption instances and key vault
+        // clients do not leak.
+        try {
+            if (warmupRequests > 0) {
+                // Prefetch the DEK document. This warms the server cache and the driver code paths for the key vault find.
+                // Each ClientEncryption still uses its own key vault client.
+                try (var client = MongoClients.create(MongoClientSettings.builder()
+                        .applyConnectionString(CONNECTION_STRING)
+                        .build())) {
+                    var prefetchStartTimeNs = System.nanoTime();
+                    prefetchedKeys = client.getDatabase(VAULT_NAMESPACE.getDatabaseName())
+                            .getCollection(VAULT_NAMESPACE.getCollectionName(), BsonDocument.class)
+                            .find(new BsonDocument("_id", dataKey))
+                            .into(new ArrayList<>())
+                            .size();
+                    prefetchTimeNs = System.nanoTime() - prefetchStartTimeNs;
+                }
+                var warmupKmsRequestsBefore = provider.getRequestCounts();
+                System.out.printf("Warming up with %d requests ... begin\n", warmupRequests);
+                warmupResult = LoadRunner.run(warmupRequests, workers, workerThreads, iteration);
+                System.out.printf("Warming up with %d requests ... end\n", warmupRequests);
+                if (null != phaseTimer) {
+                    phaseTimer.clear();
+                }
+                // Report only the measured requests in the pool and shared statistics. Instances warmed up stay warm.
+                if (null != pool) {
+                    pool.clear();
+                }
+                if (null != sharedEncryptions) {
+                    sharedEncryptions.clear();
+                }
+                warmupKmsRequests = KmsBenchmark.subtractCounts(provider.getRequestCounts(), warmupKmsRequestsBefore);
+            }
+            kmsRequestsBefore = provider.getRequestCounts();
+            if (targetRate > 0) {
+                System.out.printf("Sending %d requests at %.2f requests/sec with %d %s worker(s) ... begin\n", totalRequests, targetRate, workers, workerThreads);
+                result = LoadRunner.runOpenLoop(totalRequests, targetRate, workers, workerThreads, iteration);
+            } else {
+                System.out.printf("Sending %d requests with %d %s worker(s) ... begin\n", totalRequests, workers, workerThreads);
+                result = LoadRunner.run(totalRequests, workers, workerThreads, iteration);
+            }
+            System.out.printf("Sending %d requests ... end\n", totalRequests);
+        } finally {
+            if (null != pool) {
+                pool.close();
+            }
+            if (null != sharedEncryptions) {
+                sharedEncryptions.close();
+            }
+        }
+
+        // Print statistics.
+        var recorder = result.recorder;
+        var durationSec = result.durationSec;
+        var requestsPerSecond = totalRequests / durationSec;
+        var maxRequestTimeSec = recorder.getMaxSec();
+        var medianRequestTimeSec = recorder.getValueAtPercentileSec(50);
+
+        System.out.printf("Total requests run    : %d\n",totalRequests);
+        System.out.printf("Duration              : %.2fs\n",durationSec);
+        System.out.printf("Avg requests/sec      : %.2f\n", requestsPerSecond);
+        if (targetRate > 0) {
+            // Request times below include time waiting for a worker after the intended start time.
+            System.out.printf("Target requests/sec   : %.2f\n", targetRate);
+        }
+        System.out.printf("Max request time      : %.2fs\n", maxRequestTimeSec);
+        System.out.printf("Median request time   : %.2fs\n", medianRequestTimeSec);
+        System.out.println("Request time percentiles");
+        for (var percentile : new double[]{50, 90, 99, 99.9, 99.99}) {
+            System.out.printf("%-22s: %.3fms\n", "p" + String.valueOf(percentile).replaceAll("\\.0$", ""), recorder.getValueAtPercentileMicros(percentile) / 1_000.0);
+        }
+        System.out.printf("%-22s: %.3fms\n", "max", recorder.getMaxMicros() / 1_000.0);
+        var kmsRequests = KmsBenchmark.subtractCounts(provider.getRequestCounts(), kmsRequestsBefore);
+        var totalKmsRequestsRun = 0L;
+        for (var entry : kmsRequests.entrySet()) {
+            System.out.printf("%-22s: %d (%.2f per request)\n", entry.getKey(), entry.getValue(), entry.getValue() / (double) totalRequests);
+            totalKmsRequestsRun += entry.getValue();
+        }
+        if (!kmsRequests.isEmpty()) {
+            System.out.printf("%-22s: %d (%.2f per request)\n", "All KMS requests", totalKmsRequestsRun, totalKmsRequestsRun / (double) totalRequests);
+        }
+
+        if (null != warmupResult) {
+            var warmupRecorder = warmupResult.recorder;
+            System.out.println("Warm-up statistics");
+            System.out.printf("Prefetched keys       : %d in %.3fms\n", prefetchedKeys, prefetchTimeNs / 1_000_000.0);
+            System.out.printf("Warm-up requests      : %d\n", warmupRecorder.getCount());
+            System.out.printf("Duration              : %.2fs\n", warmupResult.durationSec);
+            System.out.printf("%-22s: median %.3fms, p99 %.3fms, max %.3fms\n", "Request time",
+                    warmupRecorder.getValueAtPercentileMicros(50) / 1_000.0,
+                    warmupRecorder.getValueAtPercentileMicros(99) / 1_000.0,
+                    warmupRecorder.getMaxMicros() / 1_000.0);
+            for (var entry : warmupKmsRequests.entrySet()) {
+                System.out.printf("%-22s: %d\n", entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (null != pool) {
+            // Cold and warm times only include the encrypt call, not time waiting for a free ClientEncryption.
+            System.out.println("ClientEncryption pool statistics");
+            System.out.printf("Pool size             : %d\n", pool.getSize());
+            var labels = new String[]{"Cold encrypt", "Warm encrypt"};
+            var poolRecorders = new LatencyRecorder[]{pool.getColdRecorder(), pool.getWarmRecorder()};
+            for (var i = 0; i < labels.length; i++) {
+                var poolRecorder = poolRecorders[i];
+                System.out.printf("%-22s: %d requests, median %.3fms, p99 %.3fms, max %.3fms\n", labels[i],
+                        poolRecorder.getCount(),
+                        poolRecorder.getValueAtPercentileMicros(50) / 1_000.0,
+                        poolRecorder.getValueAtPercentileMicros(99) / 1_000.0,
+                        poolRecorder.getMaxMicros() / 1_000.0);
+            }
+        }
+
+        if (null != sharedEncryptions) {
+            System.out.println("Shared ClientEncryption statistics");
+            System.out.printf("Instances created     : %d\n", sharedEncryptions.getCreated());
+            System.out.printf("Instances reused      : %d\n", sharedEncryptions.getReused());
+            System.out.printf("Instances evicted     : %d\n", sharedEncryptions.getEvictions());
+        }
+
+        var tokenCache = context.tokenCache;
+        if (null != tokenCache) {
+            var fetchRecorder = tokenCache.getFetchRecorder();
+            System.out.println("Azure token cache statistics");
+            System.out.printf("Token fetches         : %d\n", fetchRecorder.getCount());
+            System.out.printf("Token reuses          : %d\n", tokenCache.getHits());
+            if (fetchRecorder.getCount() > 0) {
+                System.out.printf("%-22s: median %.3fms, max %.3fms\n", "Token fetch time",
+                        fetchRecorder.getValueAtPercentileMicros(50) / 1_000.0,
+                        fetchRecorder.getMaxMicros() / 1_000.0);
+            }
+        }
+
+        var credentialSupplier = context.credentialSupplier;
+        if (null != credentialSupplier) {
+            var fetchRecorder = credentialSupplier.getFetchRecorder();
+            System.out.println("Credential supplier statistics");
+            System.out.printf("Credential fetches    : %d\n", fetchRecorder.getCount());
+            System.out.printf("Blocking fetches      : %d\n", credentialSupplier.getBlockingFetches());
+            System.out.printf("Background refreshes  : %d\n", credentialSupplier.getRefreshes());
+            System.out.printf("Refresh failures      : %d\n", credentialSupplier.getRefreshFailures());
+            if (fetchRecorder.getCount() > 0) {
+                System.out.printf("%-22s: median %.3fms, max %.3fms\n", "Credential fetch time",
+                        fetchRecorder.getValueAtPercentileMicros(50) / 1_000.0,
+                        fetchRecorder.getMaxMicros() / 1_000.0);
+            }
+        }
+
+        if (workers > 1 && targetRate <= 0) {
+            // Print the spread of latency across workers. A slow or starved worker shows up as a wide min-max range.
+            var minWorkerRequests = Long.MAX_VALUE;
+            var maxWorkerRequests = 0L;
+            var minWorkerMeanSec = Double.MAX_VALUE;
+            var maxWorkerMeanSec = 0.0;
+            var minWorkerMaxSec = Double.MAX_VALUE;
+            var maxWorkerMaxSec = 0.0;
+            for (var stats : result.workerStats) {
+                minWorkerRequests = Math.min(minWorkerRequests, stats.getCount());
+                maxWorkerRequests = Math.max(maxWorkerRequests, stats.getCount());
+                if (stats.getCount() == 0) {
+                    continue;
+                }
+                minWorkerMeanSec = Math.min(minWorkerMeanSec, stats.getMeanSec());
+                maxWorkerMeanSec = Math.max(maxWorkerMeanSec, stats.getMeanSec());
+                minWorkerMaxSec = Math.min(minWorkerMaxSec, stats.getMaxSec());
+                maxWorkerMaxSec = Math.max(maxWorkerMaxSec, stats.getMaxSec());
+            }
+            System.out.println("Per-worker statistics");
+            System.out.printf("Workers               : %d (%s threads)\n", workers, workerThreads);
+            System.out.printf("Avg requests/sec      : %.2f\n", requestsPerSecond / workers);
+            System.out.printf("Requests              : min %d, max %d\n", minWorkerRequests, maxWorkerRequests);
+            System.out.printf("Mean request time     : min %.2fs, max %.2fs\n", minWorkerMeanSec, maxWorkerMeanSec);
+            System.out.printf("Max request time      : min %.2fs, max %.2fs\n", minWorkerMaxSec, maxWorkerMaxSec);
+        }
+
+        if (null != phaseTimer) {
+            // Phase times are recorded for every request, so a phase's p99 can be compared with the request p99.
+            System.out.println("Phase statistics");
+            for (var phase = 0; phase < PhaseTimer.PHASES.length; phase++) {
+                var phaseRecorder = phaseTimer.getRecorder(phase);
+                System.out.printf("%-22s: median %.3fms, p99 %.3fms, max %.3fms, mean %.3fms\n", PhaseTimer.PHASES[phase],
+                        phaseRecorder.getValueAtPercentileMicros(50) / 1_000.0,
+                        phaseRecorder.getValueAtPercentileMicros(99) / 1_000.0,
+                        phaseRecorder.getMaxMicros() / 1_000.0,
+                        phaseRecorder.getMeanMicros() / 1_000.0);
+            }
+        }
+
+        // Print a histogram with log-scale buckets.
+        System.out.println("Histogram");
+        HistogramReport.printLogHistogram(recorder, System.out);
+        if (null != phaseTimer) {
+            for (var phase = 0; phase < PhaseTimer.PHASES.length; phase++) {
+                System.out.printf("Histogram: %s\n", PhaseTimer.PHASES[phase]);
+                HistogramReport.printLogHistogram(phaseTimer.getRecorder(phase), System.out);
+            }
+        }
+
+        var hgrmFile = getEnv("HGRM_FILE", "");
+        if (!hgrmFile.isEmpty()) {
+            try (var out = new PrintStream(new FileOutputStream(hgrmFile), false, StandardCharsets.UTF_8)) {
+                HistogramReport.writePercentileDistribution(recorder, out);
+            }
+            System.out.printf("Wrote percentile distribution to %s\n", hgrmFile);
+        }
+
+        var totalKmsRequests = provider.getRequestCounts();
+        if (!totalKmsRequests.isEmpty()) {
+            // Counts include requests made to create the DEK.
+            System.out.println("Mock KMS requests");
+            for (var entry : totalKmsRequests.entrySet()) {
+                System.out.printf("%-22s: %d\n", entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (!kmsRequestThresholds.isEmpty()) {
+            // Check after printing the statistics, so a failed run still has its report.
+            var violations = kmsRequestThresholds.check(kmsRequests, totalRequests);
+            if (!violations.isEmpty()) {
+                throw new IllegalStateException("Error: KMS requests exceed MAX_KMS_REQUESTS_PER_REQUEST=" + kmsRequestThresholds + ":\n  "
+                        + String.join("\n  ", violations));
+            }
+            System.out.printf("%-22s: passed %s\n", "KMS request check", kmsRequestThresholds);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+// SharedClientEncryptions is an opt-in layer on top of ClientEncryptions.create that shares decrypted DEKs across
+// short-lived ClientEncryption objects in the same JVM.
+// The driver does not expose decrypted DEK material, so DEKs cannot be copied between ClientEncryption instances. Instead,
+// create returns a lease on a shared ClientEncryption for the settings. libmongocrypt caches decrypted DEKs in each
+// ClientEncryption, so a caller that creates and closes an encryptor per operation reuses DEKs decrypted by earlier
+// callers rather than sending a new KMS request.
+// - Shared instances are keyed by the ClientEncryptionSettings object. Reuse the same settings object to share DEKs.
+// - ttlMs bounds how long a shared instance is reused. After it expires, the next create makes a new instance, so DEKs are
+//   decrypted again. libmongocrypt also expires its cached DEKs after 60 seconds.
+// - maxSize bounds the number of shared instances. When full, the least recently used instance is evicted.
+// An expired or evicted instance is closed once all of its leases are closed.
+
+package org.mongodb.kmsbench;
+
+import com.mongodb.ClientEncryptionSettings;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.CreateEncryptedCollectionParams;
+import com.mongodb.client.model.vault.DataKeyOptions;
+import com.mongodb.client.model.vault.EncryptOptions;
+import com.mongodb.client.model.vault.RewrapManyDataKeyOptions;
+import com.mongodb.client.model.vault.RewrapManyDataKeyResult;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.vault.ClientEncryption;
+import com.mongodb.client.vault.ClientEncryptions;
+import org.bson.BsonBinary;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+public class SharedClientEncryptions implements AutoCloseable {
+
+    static class Shared {
+        final ClientEncryption clientEncryption;
+        final long expiresAtNs;
+        int leases;
+        boolean evicted;
+
+        Shared(ClientEncryption clientEncryption, long expiresAtNs) {
+            this.clientEncryption = clientEncryption;
+            this.expiresAtNs = expiresAtNs;
+        }
+    }
+
+    private final long ttlNs;
+    private final int maxSize;
+    // shared is in access order, so the first entry is the least recently used.
+    private final LinkedHashMap<ClientEncryptionSettings, Shared> shared = new LinkedHashMap<>(16, 0.75f, true);
+    private long created;
+    private long reused;
+    private long evictions;
+
+    public SharedClientEncryptions(long ttlMs, int maxSize) {
+        if (ttlMs <= 0) {
+            throw new IllegalArgumentException("Error: expected a positive TTL, got: " + ttlMs + "ms");
+        }
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Error: expected a maximum size of at least one, got: " + maxSize);
+        }
+        this.ttlNs = ttlMs * 1_000_000;
+        this.maxSize = maxSize;
+    }
+
+    // create returns a lease on a shared ClientEncryption for settings. Close the lease like a ClientEncryption.
+    // Creating a new shared instance holds the lock, so concurrent callers wait for it rather than each creating one.
+    public synchronized ClientEncryption create(ClientEncryptionSettings settings) {
+        var nowNs = System.nanoTime();
+        var entry = shared.get(settings);
+        if (null != entry && nowNs - entry.expiresAtNs >= 0) {
+            shared.remove(settings);
+            evict(entry);
+            evictions++;
+            entry = null;
+        }
+        if (null == entry) {
+            var clientEncryption = ClientEncryptions.create(settings);
+            // Start the TTL once the instance is created.
+            entry = new Shared(clientEncryption, System.nanoTime() + ttlNs);
+            shared.put(settings, entry);
+            created++;
+            var it = shared.values().iterator();
+            while (shared.size() > maxSize) {
+                var eldest = it.next();
+                it.remove();
+                evict(eldest);
+                evictions++;
+            }
+        } else {
+            reused++;
+        }
+        entry.leases++;
+        return new Lease(entry);
+    }
+
+    private void evict(Shared entry) {
+        entry.evicted = true;
+        if (entry.leases == 0) {
+            entry.clientEncryption.close();
+        }
+    }
+
+    private synchronized void release(Shared entry) {
+        entry.leases--;
+        if (entry.evicted && entry.leases == 0) {
+            entry.clientEncryption.close();
+        }
+    }
+
+    // getCreated returns the number of ClientEncryption instances created. Each is expected to decrypt the DEK once.
+    public synchronized long getCreated() {
+        return created;
+    }
+
+    // getReused returns the number of leases on an existing ClientEncryption instance.
+    public synchronized long getReused() {
+        return reused;
+    }
+
+    // getEvictions returns the number of instances evicted by TTL or size.
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    // clear resets the created, reused and eviction counts, for example after warm-up. Shared instances are kept.
+    public synchronized void clear() {
+        created = 0;
+        reused = 0;
+        evictions = 0;
+    }
+
+    // close evicts all shared instances without counting them as evictions. Instances with open leases are closed when the last lease is closed.
+    @Override
+    public synchronized void close() {
+        var entries = new ArrayList<>(shared.values());
+        shared.clear();
+        for (var entry : entries) {
+            evict(entry);
+        }
+    }
+
+    // Lease delegates to a shared ClientEncryption. close releases the lease instead of closing the shared instance.
+    class Lease implements ClientEncryption {
+        private final Shared entry;
+        private boolean closed;
+
+        Lease(Shared entry) {
+            this.entry = entry;
+        }
+
+        private ClientEncryption delegate() {
+            if (closed) {
+                throw new IllegalStateException("Error: ClientEncryption lease is closed");
+            }
+            return entry.clientEncryption;
+        }
+
+        @Override
+        public BsonBinary createDataKey(String kmsProvider) {
+            return delegate().createDataKey(kmsProvider);
+        }
+
+        @Override
+        public BsonBinary createDataKey(String kmsProvider, DataKeyOptions dataKeyOptions) {
+            return delegate().createDataKey(kmsProvider, dataKeyOptions);
+        }
+
+        @Override
+        public BsonBinary encrypt(BsonValue value, EncryptOptions options) {
+            return delegate().encrypt(value, options);
+        }
+
+        @Override
+        public BsonDocument encryptExpression(Bson expression, EncryptOptions options) {
+            return delegate().encryptExpression(expression, options);
+        }
+
+        @Override
+        public BsonValue decrypt(BsonBinary value) {
+            return delegate().decrypt(value);
+        }
+
+        @Override
+        public DeleteResult deleteKey(BsonBinary id) {
+            return delegate().deleteKey(id);
+        }
+
+        @Override
+        public BsonDocument getKey(BsonBinary id) {
+            return delegate().getKey(id);
+        }
+
+        @Override
+        public FindIterable<BsonDocument> getKeys() {
+            return delegate().getKeys();
+        }
+
+        @Override
+        public BsonDocument addKeyAltName(BsonBinary id, String keyAltName) {
+            return delegate().addKeyAltName(id, keyAltName);
+        }
+
+        @Override
+        public BsonDocument removeKeyAltName(BsonBinary id, String keyAltName) {
+            return delegate().removeKeyAltName(id, keyAltName);
+        }
+
+        @Override
+        public BsonDocument getKeyByAltName(String keyAltName) {
+            return delegate().getKeyByAltName(keyAltName);
+        }
+
+        @Override
+        public RewrapManyDataKeyResult rewrapManyDataKey(Bson filter) {
+            return delegate().rewrapManyDataKey(filter);
+        }
+
+        @Override
+        public RewrapManyDataKeyResult rewrapManyDataKey(Bson filter, RewrapManyDataKeyOptions options) {
+            return delegate().rewrapManyDataKey(filter, options);
+        }
+
+        @Override
+        public BsonDocument createEncryptedCollection(MongoDatabase database, String collectionName,
+                                                      CreateCollectionOptions createCollectionOptions,
+                                                      CreateEncryptedCollectionParams createEncryptedCollectionParams) {
+            return delegate().createEncryptedCollection(database, collectionName, createCollectionOptions,
+                    createEncryptedCollectionParams);
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            release(entry);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+// StartupBenchmark measures the time to the first encrypt with a new ClientEncryption, like a serverless function that
+// creates an encryptor on cold start. Each run is measured in phases:
+// - Native load: loading and initializing the libmongocrypt bindings (com.mongodb.crypt.capi.CAPI). This only costs time
+//   the first time in a JVM.
+// - Client create: ClientEncryptions.create, which creates the key vault MongoClient and starts its monitoring threads.
+// - Server discovery: the time from the start of client create until the key vault client discovers a server. Discovery
+//   runs in the background, so it overlaps client create and the first encrypt.
+// - First encrypt: the first encrypt, which waits for discovery, finds the DEK in the key vault and decrypts it with KMS.
+// - Time to first encrypt: from the start of native load until the first encrypt returns.
+// Runs happen in fresh JVMs, forked with the class path of this JVM, and in this JVM after it is warm. Fresh JVMs also
+// report the JVM uptime when the run starts, which is the JVM and class loading cost before the measured phases.
+// Forked JVMs inherit the environment, and create the KMS provider with KmsProviders before the measured phases. With
+// USE_MOCK_KMS=true, each forked JVM starts its own mock KMS server with the same MOCK_KMS_LATENCY and certificate. The DEK's
+// master key names the mock of this JVM, so the decrypt request (aws Decrypt, azure unwrapKey) goes to it. The azure token
+// request goes to the fork's own mock, which its identityPlatformEndpoint names, and is not counted by this JVM.
+// With AZURE_TOKEN_CACHE=true or CREDENTIAL_SUPPLIER=true, runs in this JVM share the run's AzureTokenCache or
+// RefreshingCredentialSupplier, and each forked JVM creates its own, so the first encrypt in a fresh JVM includes the first
+// token or credential fetch.
+// Options for MODE=startup:
+// - STARTUP_FORKS to the number of fresh JVMs to fork. Defaults to 5.
+// - STARTUP_WARM_RUNS to the number of runs in this JVM. Defaults to 5.
+// - STARTUP_JVM_ARGS to space separated options for forked JVMs, like "-Xshare:off". Defaults to none.
+
+package org.mongodb.kmsbench;
+
+import com.mongodb.ClientEncryptionSettings;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.model.vault.EncryptOptions;
+import com.mongodb.client.vault.ClientEncryptions;
+import com.mongodb.connection.ServerDescription;
+import com.mongodb.event.ClusterDescriptionChangedEvent;
+import com.mongodb.event.ClusterListener;
+import org.bson.BsonBinary;
+import org.bson.BsonBinarySubType;
+import org.bson.BsonString;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mongodb.kmsbench.Env.getEnv;
+
+public class StartupBenchmark {
+
+    public static final String[] PHASES = {"Native load", "Client create", "Server discovery", "First encrypt", "Time to first encrypt"};
+    static final String CAPI_CLASS = "com.mongodb.crypt.capi.CAPI";
+    // Forked JVMs print their result on a line with this prefix.
+    static final String RESULT_PREFIX = "startup-result:";
+    static final long DISCOVERY_TIMEOUT_MS = 10_000;
+
+    private final KmsProvider provider;
+    private final ClientEncryptionSettings ceSettings;
+    private final BsonBinary dataKey;
+
+    // ceSettings are the settings of each new ClientEncryption. measure adds a cluster listener to its key vault client.
+    public StartupBenchmark(KmsProvider provider, ClientEncryptionSettings ceSettings, BsonBinary dataKey) {
+        this.provider = provider;
+        this.ceSettings = ceSettings;
+        this.dataKey = dataKey;
+    }
+
+    // measure runs the phases once and returns the time of each phase of PHASES in nanoseconds.
+    long[] measure() throws Exception {
+        var discoveredTimeNs = new AtomicLong();
+        var discovered = new CountDownLatch(1);
+        ClusterListener clusterListener = new ClusterListener() {
+            @Override
+            public void clusterDescriptionChanged(ClusterDescriptionChangedEvent event) {
+                if (event.getNewDescription().getServerDescriptions().stream().anyMatch(ServerDescription::isOk)
+                        && discoveredTimeNs.compareAndSet(0, System.nanoTime())) {
+                    discovered.countDown();
+                }
+            }
+        };
+        var ceSettingsBuilder = ClientEncryptionSettings.builder()
+                .keyVaultMongoClientSettings(MongoClientSettings.builder(ceSettings.getKeyVaultMongoClientSettings())
+                        .applyToClusterSettings(builder -> builder.addClusterListener(clusterListener))
+                        .build())
+                .keyVaultNamespace(ceSettings.getKeyVaultNamespace())
+                .kmsProviders(ceSettings.getKmsProviders())
+                .kmsProviderPropertySuppliers(ceSettings.getKmsProviderPropertySuppliers());
+        if (null != ceSettings.getKmsProviderSslContextMap()) {
+            ceSettingsBuilder.kmsProviderSslContextMap(ceSettings.getKmsProviderSslContextMap());
+        }
+        var listenedCeSettings = ceSettingsBuilder.build();
+
+        var phaseNs = new long[PHASES.length];
+        var startTimeNs = System.nanoTime();
+        Class.forName(CAPI_CLASS);
+        var loadedTimeNs = System.nanoTime();
+        try (var encryptor = ClientEncryptions.create(listenedCeSettings)) {
+            var createdTimeNs = System.nanoTime();
+            encryptor.encrypt(new BsonString("foo"), new EncryptOptions(KmsBenchmark.ENCRYPTION_ALGORITHM).keyId(dataKey));
+            var encryptedTimeNs = System.nanoTime();
+            if (!discovered.await(DISCOVERY_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Error: timed out waiting for the key vault client to discover a server");
+            }
+            phaseNs[0] = loadedTimeNs - startTimeNs;
+            phaseNs[1] = createdTimeNs - loadedTimeNs;
+            phaseNs[2] = discoveredTimeNs.get() - loadedTimeNs;
+            phaseNs[3] = encryptedTimeNs - createdTimeNs;
+            phaseNs[4] = encryptedTimeNs - startTimeNs;
+        }
+        return phaseNs;
+    }
+
+    // runMode runs MODE=startup.
+    static void runMode(BenchmarkContext context) throws Exception {
+        var jvmArgs = getEnv("STARTUP_JVM_ARGS", "").trim();
+        new StartupBenchmark(context.provider, context.ceSettings, context.dataKey)
+                .run(Integer.parseInt(getEnv("STARTUP_FORKS", "5")),
+                        Integer.parseInt(getEnv("STARTUP_WARM_RUNS", "5")),
+                        jvmArgs.isEmpty() ? new String[0] : jvmArgs.split("\\s+"),
+                        System.out);
+    }
+
+    // run measures forks fresh JVMs, then warmRuns runs in this JVM, and prints the phases side by side. jvmArgs are passed
+    // to forked JVMs.
+    public void run(int forks, int warmRuns, String[] jvmArgs, PrintStream out) throws Exception {
+        var freshRecorders = createRecorders();
+        var uptimeRecorder = new LatencyRecorder();
+        for (var i = 0; i < forks; i++) {
+            var result = fork(jvmArgs);
+            for (var phase = 0; phase < PHASES.length; phase++) {
+                freshRecorders[phase].recordNs(result[phase]);
+            }
+            uptimeRecorder.recordNs(result[PHASES.length]);
+        }
+        // Run once untimed so this JVM is warm even if it has not encrypted before.
+        measure();
+        var warmRecorders = createRecorders();
+        for (var i = 0; i < warmRuns; i++) {
+            var result = measure();
+            for (var phase = 0; phase < PHASES.length; phase++) {
+                warmRecorders[phase].recordNs(result[phase]);
+            }
+        }
+        out.printf("Fresh JVMs            : %d\n", forks);
+        out.printf("Warm runs             : %d\n", warmRuns);
+        out.printf("%-22s %14s %14s %14s %14s\n", "Phase", "Fresh med ms", "Fresh max ms", "Warm med ms", "Warm max ms");
+        for (var phase = 0; phase < PHASES.length; phase++) {
+            out.printf("%-22s %14s %14s %14s %14s\n", PHASES[phase],
+                    formatMs(freshRecorders[phase], 50), formatMs(freshRecorders[phase], 100),
+                    formatMs(warmRecorders[phase], 50), formatMs(warmRecorders[phase], 100));
+        }
+        out.printf("%-22s %14s %14s %14s %14s\n", "JVM uptime at start", formatMs(uptimeRecorder, 50), formatMs(uptimeRecorder, 100), "-", "-");
+    }
+
+    private static LatencyRecorder[] createRecorders() {
+        var recorders = new LatencyRecorder[PHASES.length];
+        for (var phase = 0; phase < PHASES.length; phase++) {
+            recorders[phase] = new LatencyRecorder();
+        }
+        return recorders;
+    }
+
+    private static String formatMs(LatencyRecorder recorder, double percentile) {
+        if (recorder.getCount() == 0) {
+            return "-";
+        }
+        return String.format("%.3f", recorder.getValueAtPercentileMicros(percentile) / 1_000.0);
+    }
+
+    // fork runs main in a new JVM and returns the phases followed by the JVM uptime at the start, in nanoseconds.
+    private long[] fork(String[] jvmArgs) throws Exception {
+        var command = new ArrayList<String>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (var jvmArg : jvmArgs) {
+            command.add(jvmArg);
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(StartupBenchmark.class.getName());
+        command.add(provider.getName());
+        command.add(Base64.getEncoder().encodeToString(dataKey.getData()));
+        var processBuilder = new ProcessBuilder(command).redirectErrorStream(true);
+        processBuilder.environment().putAll(createForkEnvironment());
+        var process = processBuilder.start();
+        var output = new StringBuilder();
+        long[] result = null;
+        try (var reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while (null != (line = reader.readLine())) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    var values = line.substring(RESULT_PREFIX.length()).trim().split(",");
+                    result = new long[values.length];
+                    for (var i = 0; i < values.length; i++) {
+                        result[i] = Long.parseLong(values[i]);
+                    }
+                } else {
+                    output.append(line).append('\n');
+                }
+            }
+        }
+        var exitCode = process.waitFor();
+        if (exitCode != 0 || null == result || result.length != PHASES.length + 1) {
+            throw new IllegalStateException("Error: forked JVM exited with " + exitCode + " without a result. Output:\n" + output);
+        }
+        return result;
+    }
+
+    // createForkEnvironment returns environment variables that let a forked JVM decrypt the DEK.
+    private Map<String, String> createForkEnvironment() {
+        var environment = new HashMap<String, String>();
+        if ("local".equals(provider.getName())) {
+            // Pass the master key, which may have been generated for this run.
+            environment.put("LOCAL_MASTER_KEY", Base64.getEncoder().encodeToString((byte[]) provider.getCredentials().get("key")));
+        }
+        return environment;
+    }
+
+    // main runs once in a forked JVM. Arguments: the KMS provider name and the base64 encoded DEK id.
+    public static void main(String[] args) throws Exception {
+        var uptimeNs = TimeUnit.MILLISECONDS.toNanos(ManagementFactory.getRuntimeMXBean().getUptime());
+        if (args.length != 2) {
+            throw new IllegalArgumentException("Error: expected arguments: <KMS provider> <base64 DEK id>");
+        }
+        var dataKey = new BsonBinary(BsonBinarySubType.UUID_STANDARD, Base64.getDecoder().decode(args[1]));
+        var useMockKms = Boolean.parseBoolean(getEnv("USE_MOCK_KMS", "false"));
+        try (var provider = KmsProviders.create(args[0], useMockKms, LatencyModel.parse(getEnv("MOCK_KMS_LATENCY", "none")))) {
+            var ceSettingsBuilder = ClientEncryptionSettings.builder()
+                    .keyVaultMongoClientSettings(MongoClientSettings.builder()
+                            .applyConnectionString(KmsBenchmark.CONNECTION_STRING)
+                            .build())
+                    .keyVaultNamespace(KmsBenchmark.VAULT_NAMESPACE.getFullName())
+                    .kmsProviders(Map.of(provider.getName(), provider.getCredentials()));
+            if (null != provider.getSslContext()) {
+                ceSettingsBuilder.kmsProviderSslContextMap(Map.of(provider.getName(), provider.getSslContext()));
+            }
+            // Supply the credentials like the parent JVM, with a token cache or credential supplier of this JVM.
+            var tokenCache = Boolean.parseBoolean(getEnv("AZURE_TOKEN_CACHE", "false"))
+                    ? KmsBenchmark.createTokenCache(provider, "AZURE_TOKEN_CACHE")
+                    : null;
+            try (var credentialSupplier = Boolean.parseBoolean(getEnv("CREDENTIAL_SUPPLIER", "false"))
+                    ? CredentialSupplierComparison.createSupplier(provider)
+                    : null) {
+                var ceSettings = KmsBenchmark.configureCredentials(provider, ceSettingsBuilder.build(), tokenCache, credentialSupplier);
+                var phaseNs = new StartupBenchmark(provider, ceSettings, dataKey).measure();
+                var result = new StringBuilder(RESULT_PREFIX);
+                for (var ns : phaseNs) {
+                    result.append(ns).append(',');
+                }
+                System.out.println(result.append(uptimeNs));
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+// TokenCacheComparison runs the MODE=create workload with the azure KMS provider twice: with each ClientEncryption fetching
+// its own access token, and with tokens shared through an AzureTokenCache. Each request creates a ClientEncryption, so it
+// always sends an unwrapKey request. The difference in latency between the two runs is the latency saved per encrypt by
+// reusing tokens.
+// Token fetches by the cache are counted separately from token requests by libmongocrypt. A mock KMS server counts both, so
+// the cache's fetches are subtracted from the mock's token requests.
+// MODE=token-cache requires KMS_PROVIDER=azure, and uses TOTAL_REQUESTS, WARMUP_REQUESTS, WORKERS and WORKER_THREADS per
+// variant. See RequestLoop. The shared variant uses a new AzureTokenCache with AZURE_TOKEN_REFRESH_MARGIN.
+
+package org.mongodb.kmsbench;
+
+import com.mongodb.ClientEncryptionSettings;
+import com.mongodb.client.model.vault.EncryptOptions;
+import com.mongodb.client.vault.ClientEncryptions;
+import org.bson.BsonBinary;
+import org.bson.BsonString;
+
+import java.io.PrintStream;
+import java.util.Map;
+
+import static org.mongodb.kmsbench.Env.getEnv;
+
+public class TokenCacheComparison {
+
+    private final KmsProvider provider;
+    private final ClientEncryptionSettings ceSettings;
+    private final AzureTokenCache tokenCache;
+    private final BsonBinary dataKey;
+
+    // ceSettings must not use tokenCache.
+    public TokenCacheComparison(KmsProvider provider, ClientEncryptionSettings ceSettings, AzureTokenCache tokenCache, BsonBinary dataKey) {
+        if (!"azure".equals(provider.getName())) {
+            throw new IllegalArgumentException("Error: the token cache comparison requires the azure KMS provider, got: " + provider.getName());
+        }
+        this.provider = provider;
+        this.ceSettings = ceSettings;
+        this.tokenCache = tokenCache;
+        this.dataKey = dataKey;
+    }
+
+    // runMode runs MODE=token-cache.
+    static void runMode(BenchmarkContext context) throws Exception {
+        new TokenCacheComparison(context.provider, context.staticCeSettings,
+                KmsBenchmark.createTokenCache(context.provider, "MODE=token-cache"), context.dataKey)
+                .run(Integer.parseInt(getEnv("WARMUP_REQUESTS", "0")),
+                        Integer.parseInt(getEnv("TOTAL_REQUESTS", "1000")),
+                        Integer.parseInt(getEnv("WORKERS", "1")),
+                        getEnv("WORKER_THREADS", "platform"),
+                        System.out);
+    }
+
+    static class Row {
+        String variant;
+        LoadRunner.Result result;
+        Map<String, Long> kmsRequests;
+        long cacheFetches;
+    }
+
+    public void run(int warmupRequests, int requests, int workers, String workerThreads, PrintStream out) throws Exception {
+        var uncached = measure("per-client", ceSettings, warmupRequests, requests, workers, workerThreads);
+        var cached = measure("shared", tokenCache.configure(ceSettings), warmupRequests, requests, workers, workerThreads);
+        out.printf("Requests              : %d per variant after %d warm-up, %d %s worker(s)\n", requests, warmupRequests, workers, workerThreads);
+        out.printf("%-12s %12s %12s %12s %14s %14s\n", "Tokens", "Median ms", "p99 ms", "Mean ms", "Cache fetches", "Token req/op");
+        for (var row : new Row[]{uncached, cached}) {
+            var recorder = row.result.recorder;
+            var tokenRequests = row.kmsRequests.get("Token requests");
+            out.printf("%-12s %12.3f %12.3f %12.3f %14d %14s\n", row.variant,
+                    recorder.getValueAtPercentileMicros(50) / 1_000.0,
+                    recorder.getValueAtPercentileMicros(99) / 1_000.0,
+                    recorder.getMeanMicros() / 1_000.0,
+                    row.cacheFetches,
+                    null != tokenRequests ? String.format("%.2f", tokenRequests / (double) requests) : "-");
+        }
+        var fetchRecorder = tokenCache.getFetchRecorder();
+        if (fetchRecorder.getCount() > 0) {
+            out.printf("%-22s: median %.3fms, max %.3fms\n", "Token fetch time", fetchRecorder.getValueAtPercentileMicros(50) / 1_000.0,
+                    fetchRecorder.getMaxMicros() / 1_000.0);
+        }
+        out.printf("%-22s: median %.3fms, mean %.3fms\n", "Saved per encrypt",
+                (uncached.result.recorder.getValueAtPercentileMicros(50) - cached.result.recorder.getValueAtPercentileMicros(50)) / 1_000.0,
+                (uncached.result.recorder.getMeanMicros() - cached.result.recorder.getMeanMicros()) / 1_000.0);
+    }
+
+    private Row measure(String variant, ClientEncryptionSettings settings, int warmupRequests, int requests, int workers, String workerThreads) throws Exception {
+        LoadRunner.Iteration iteration = () -> {
+            try (var encryptor = ClientEncryptions.create(settings)) {
+                encryptor.encrypt(new BsonString("foo"), new EncryptOptions(KmsBenchmark.ENCRYPTION_ALGORITHM).keyId(dataKey));
+            }
+        };
+        if (warmupRequests > 0) {
+            LoadRunner.run(warmupRequests, workers, workerThreads, iteration);
+        }
+        var row = new Row();
+        row.variant = variant;
+        var kmsRequestsBefore = provider.getRequestCounts();
+        var cacheFetchesBefore = tokenCache.getFetchRecorder().getCount();
+        row.result = LoadRunner.run(requests, workers, workerThreads, iteration);
+        row.kmsRequests = KmsBenchmark.subtractCounts(provider.getRequestCounts(), kmsRequestsBefore);
+        row.cacheFetches = tokenCache.getFetchRecorder().getCount() - cacheFetchesBefore;
+        // The mock counts the cache's fetches as token requests. Subtract them so the column shows requests by libmongocrypt.
+        row.kmsRequests.computeIfPresent("Token requests", (name, count) -> count - row.cacheFetches);
+        return row;
+    }
+}
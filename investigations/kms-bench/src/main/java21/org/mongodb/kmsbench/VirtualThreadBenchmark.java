@@ -0,0 +1,154 @@
+// VirtualThreadBenchmark runs one encrypt per virtual thread, all at once, and records when the encrypts pin their carrier
+// threads. A pinned virtual thread blocks its carrier while it waits, for example in a synchronized block or a native call
+// through JNA. If ClientEncryption.encrypt pins while it waits on the key vault or KMS, concurrency is limited to the number
+// of carrier threads.
+// Each encrypt uses its own DEK from dataKeys, so each waits on a key vault find and a KMS decrypt. One ClientEncryption is
+// shared.
+// The report has:
+// - Carrier threads: the parallelism of the virtual thread scheduler.
+// - Max concurrency: the most encrypts in progress at once.
+// - Mean concurrency: the total time of all encrypts divided by the duration (Little's law). Mean concurrency near the
+//   number of carriers, while encrypts wait on I/O, indicates pinning.
+// - Pinned events and total pinned time from jdk.VirtualThreadPinned events at or above pinThresholdNs, and the most
+//   frequent stack frames where pinning happened.
+// This class requires Java 21. It is in src/main/java21 and compiled by the java21 profile.
+// MODE=virtual runs TOTAL_REQUESTS encrypts, and creates TOTAL_REQUESTS DEKs first. TOTAL_REQUESTS defaults to 10000.
+// Options:
+// - PIN_THRESHOLD to the minimum duration of a recorded pinning event. Defaults to 1ms.
+
+package org.mongodb.kmsbench;
+
+import com.mongodb.ClientEncryptionSettings;
+import com.mongodb.client.model.vault.EncryptOptions;
+import com.mongodb.client.vault.ClientEncryptions;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.bson.BsonBinary;
+import org.bson.BsonString;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mongodb.kmsbench.Env.getEnv;
+
+public class VirtualThreadBenchmark {
+
+    static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    static final int TOP_FRAMES = 5;
+
+    // runMode runs MODE=virtual. KmsBenchmark calls it through reflection.
+    public static void runMode(BenchmarkContext context) throws Exception {
+        var dataKeys = context.createDataKeys(Integer.parseInt(getEnv("TOTAL_REQUESTS", "10000")));
+        run(context.ceSettings, dataKeys, LatencyModel.parseDurationNs(getEnv("PIN_THRESHOLD", "1ms")), System.out);
+    }
+
+    // run encrypts once with each DEK in dataKeys, each on its own virtual thread, and prints the report.
+    public static void run(ClientEncryptionSettings ceSettings, List<BsonBinary> dataKeys, long pinThresholdNs, PrintStream out) throws Exception {
+        var tasks = dataKeys.size();
+        var carriers = Integer.parseInt(System.getProperty("jdk.virtualThreadScheduler.parallelism",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        var pinnedEvents = new AtomicLong();
+        var pinnedNs = new AtomicLong();
+        // Count pinning events by the first frame in the driver, libmongocrypt bindings or JNA.
+        var pinnedFrames = new ConcurrentHashMap<String, Long>();
+        var inProgress = new AtomicInteger();
+        var maxInProgress = new AtomicInteger();
+        var totalEncryptNs = new AtomicLong();
+        var recorder = new LatencyRecorder();
+
+        try (var recording = new RecordingStream();
+             var encryptor = ClientEncryptions.create(ceSettings)) {
+            recording.enable(PINNED_EVENT).withThreshold(Duration.ofNanos(pinThresholdNs)).withStackTrace();
+            recording.onEvent(PINNED_EVENT, event -> {
+                pinnedEvents.incrementAndGet();
+                pinnedNs.addAndGet(event.getDuration().toNanos());
+                pinnedFrames.merge(pinnedFrame(event), 1L, Long::sum);
+            });
+            recording.startAsync();
+
+            // Start all tasks before any encrypts, so they run at once.
+            var start = new CountDownLatch(1);
+            var futures = new ArrayList<Future<?>>(tasks);
+            long startTimeNs;
+            long endTimeNs;
+            try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (var dataKey : dataKeys) {
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        maxInProgress.accumulateAndGet(inProgress.incrementAndGet(), Math::max);
+                        var encryptStartTimeNs = System.nanoTime();
+                        try {
+                            encryptor.encrypt(new BsonString("foo"), new EncryptOptions(KmsBenchmark.ENCRYPTION_ALGORITHM).keyId(dataKey));
+                        } finally {
+                            var encryptNs = System.nanoTime() - encryptStartTimeNs;
+                            inProgress.decrementAndGet();
+                            totalEncryptNs.addAndGet(encryptNs);
+                            // LatencyRecorder is lock-free. A synchronized block here would pin the carrier.
+                            recorder.recordNs(encryptNs);
+                        }
+                        return null;
+                    }));
+                }
+                startTimeNs = System.nanoTime();
+                start.countDown();
+                // Closing the executor waits for all tasks.
+            }
+            endTimeNs = System.nanoTime();
+            for (var future : futures) {
+                // Throw the first failure.
+                future.get();
+            }
+            // Stop to flush the remaining events to onEvent.
+            recording.stop();
+
+            var durationSec = (endTimeNs - startTimeNs) / 1_000_000_000.0;
+            out.printf("Virtual threads       : %d\n", tasks);
+            out.printf("Carrier threads       : %d\n", carriers);
+            out.printf("Duration              : %.2fs\n", durationSec);
+            out.printf("Avg requests/sec      : %.2f\n", tasks / durationSec);
+            out.printf("%-22s: median %.3fms, p99 %.3fms, max %.3fms\n", "Encrypt time",
+                    recorder.getValueAtPercentileMicros(50) / 1_000.0,
+                    recorder.getValueAtPercentileMicros(99) / 1_000.0,
+                    recorder.getMaxMicros() / 1_000.0);
+            out.printf("Max concurrency       : %d\n", maxInProgress.get());
+            out.printf("Mean concurrency      : %.1f (%.1fx carriers)\n", totalEncryptNs.get() / 1_000_000_000.0 / durationSec,
+                    totalEncryptNs.get() / 1_000_000_000.0 / durationSec / carriers);
+            out.printf("Pin threshold         : %.3fms\n", pinThresholdNs / 1_000_000.0);
+            out.printf("Pinned events         : %d\n", pinnedEvents.get());
+            out.printf("Pinned time           : %.3fms\n", pinnedNs.get() / 1_000_000.0);
+            pinnedFrames.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .limit(TOP_FRAMES)
+                    .forEach(entry -> out.printf("%-22s: %d at %s\n", "Pinned", entry.getValue(), entry.getKey()));
+        }
+    }
+
+    // pinnedFrame returns the first frame of event's stack trace in the driver, libmongocrypt bindings or JNA, or the top frame.
+    static String pinnedFrame(RecordedEvent event) {
+        var stackTrace = event.getStackTrace();
+        if (null == stackTrace || stackTrace.getFrames().isEmpty()) {
+            return "(no stack trace)";
+        }
+        for (var frame : stackTrace.getFrames()) {
+            var className = frame.getMethod().getType().getName();
+            if (className.startsWith("com.mongodb.") || className.startsWith("com.sun.jna.")) {
+                return format(frame);
+            }
+        }
+        return format(stackTrace.getFrames().get(0));
+    }
+
+    private static String format(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+}
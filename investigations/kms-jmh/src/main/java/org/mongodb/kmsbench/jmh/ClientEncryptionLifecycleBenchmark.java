@@ -0,0 +1,29 @@
+// ClientEncryptionLifecycleBenchmark measures ClientEncryptions.create followed by close. Each ClientEncryption creates a
+// key vault MongoClient and a libmongocrypt handle, which is the fixed cost paid by short-lived encryptors.
+// Build with mvn package, then run with: java -jar target/benchmarks.jar ClientEncryptionLifecycleBenchmark
+
+package org.mongodb.kmsbench.jmh;
+
+import com.mongodb.client.vault.ClientEncryptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ClientEncryptionLifecycleBenchmark {
+
+    @Benchmark
+    public void createClose(LocalKeyVault keyVault) {
+        ClientEncryptions.create(keyVault.settings).close();
+    }
+}
@@ -0,0 +1,57 @@
+// DataKeyBenchmark measures ClientEncryption.createDataKey with the "local" KMS provider. Each call generates a DEK,
+// encrypts it with the local master key and inserts it into the key vault. The key vault is cleared after each iteration
+// so it does not grow across the run.
+// Build with mvn package, then run with: java -jar target/benchmarks.jar DataKeyBenchmark
+
+package org.mongodb.kmsbench.jmh;
+
+import com.mongodb.client.vault.ClientEncryption;
+import com.mongodb.client.vault.ClientEncryptions;
+import org.bson.BsonBinary;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DataKeyBenchmark {
+
+    private LocalKeyVault keyVault;
+    private ClientEncryption clientEncryption;
+
+    @Setup(Level.Trial)
+    public void setup(LocalKeyVault keyVault) {
+        this.keyVault = keyVault;
+        clientEncryption = ClientEncryptions.create(keyVault.settings);
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearKeyVault() {
+        keyVault.dropKeyVault();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        clientEncryption.close();
+    }
+
+    @Benchmark
+    public BsonBinary createDataKey() {
+        return keyVault.createDataKey(clientEncryption);
+    }
+}
@@ -0,0 +1,78 @@
+// ExplicitEncryptionBenchmark measures ClientEncryption.encrypt and decrypt with a cached DEK, by algorithm and payload size.
+// The DEK is decrypted once in setup. libmongocrypt expires cached DEKs after 60 seconds, so a long run includes a key vault
+// find roughly once a minute.
+// Build with mvn package, then run with: java -jar target/benchmarks.jar ExplicitEncryptionBenchmark
+// Select parameters with -p, e.g. -p payloadSize=16,1048576
+
+package org.mongodb.kmsbench.jmh;
+
+import com.mongodb.client.model.vault.EncryptOptions;
+import com.mongodb.client.vault.ClientEncryption;
+import com.mongodb.client.vault.ClientEncryptions;
+import org.bson.BsonBinary;
+import org.bson.BsonValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ExplicitEncryptionBenchmark {
+
+    @Param({"AEAD_AES_256_CBC_HMAC_SHA_512-Deterministic", "AEAD_AES_256_CBC_HMAC_SHA_512-Random"})
+    public String algorithm;
+
+    // payloadSize is the number of bytes in the encrypted BSON binary value.
+    @Param({"16", "1024", "65536"})
+    public int payloadSize;
+
+    private ClientEncryption clientEncryption;
+    private EncryptOptions encryptOptions;
+    private BsonBinary payload;
+    private BsonBinary ciphertext;
+
+    @Setup(Level.Trial)
+    public void setup(LocalKeyVault keyVault) {
+        clientEncryption = ClientEncryptions.create(keyVault.settings);
+        var dataKey = keyVault.createDataKey(clientEncryption);
+        encryptOptions = new EncryptOptions(algorithm).keyId(dataKey);
+        var bytes = new byte[payloadSize];
+        // Use a fixed seed so runs encrypt the same data.
+        new Random(0).nextBytes(bytes);
+        payload = new BsonBinary(bytes);
+        // Encrypting once decrypts and caches the DEK.
+        ciphertext = clientEncryption.encrypt(payload, encryptOptions);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        clientEncryption.close();
+    }
+
+    @Benchmark
+    public BsonBinary encrypt() {
+        return clientEncryption.encrypt(payload, encryptOptions);
+    }
+
+    @Benchmark
+    public BsonValue decrypt() {
+        return clientEncryption.decrypt(ciphertext);
+    }
+}
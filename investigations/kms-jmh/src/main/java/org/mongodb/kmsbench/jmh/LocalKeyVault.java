@@ -0,0 +1,53 @@
+// LocalKeyVault is JMH state shared by the benchmarks. It clears the key vault and builds ClientEncryptionSettings for the
+// "local" KMS provider, so benchmarks measure the driver and libmongocrypt without KMS network requests.
+// A mongod is expected at KmsBenchmark.CONNECTION_STRING.
+
+package org.mongodb.kmsbench.jmh;
+
+import com.mongodb.ClientEncryptionSettings;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.model.vault.DataKeyOptions;
+import com.mongodb.client.vault.ClientEncryption;
+import org.bson.BsonBinary;
+import org.mongodb.kmsbench.KmsBenchmark;
+import org.mongodb.kmsbench.LocalKmsProvider;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+
+@State(Scope.Benchmark)
+public class LocalKeyVault {
+
+    public ClientEncryptionSettings settings;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        dropKeyVault();
+        var provider = new LocalKmsProvider();
+        settings = ClientEncryptionSettings.builder()
+                .keyVaultMongoClientSettings(MongoClientSettings.builder()
+                        .applyConnectionString(KmsBenchmark.CONNECTION_STRING)
+                        .build())
+                .keyVaultNamespace(KmsBenchmark.VAULT_NAMESPACE.getFullName())
+                .kmsProviders(Map.of(provider.getName(), provider.getCredentials()))
+                .build();
+    }
+
+    public BsonBinary createDataKey(ClientEncryption clientEncryption) {
+        return clientEncryption.createDataKey("local", new DataKeyOptions());
+    }
+
+    public void dropKeyVault() {
+        try (var client = MongoClients.create(MongoClientSettings.builder()
+                .applyConnectionString(KmsBenchmark.CONNECTION_STRING)
+                .build())) {
+            client.getDatabase(KmsBenchmark.VAULT_NAMESPACE.getDatabaseName())
+                    .getCollection(KmsBenchmark.VAULT_NAMESPACE.getCollectionName())
+                    .drop();
+        }
+    }
+}